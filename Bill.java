@@ -0,0 +1,83 @@
+package model;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A finished bill as handed over at checkout. It keeps its own copies of the items, so the
+ * cart it came from can be cleared and reused while the bill is still being saved.
+ */
+public class Bill {
+    private final long id;
+    private final LocalDateTime timestamp;
+    private final List<BilledItem> items;
+    private final long discountBasisPoints;
+    private final long totalCents;
+    private final long netTotalCents;
+
+    public Bill(long id, LocalDateTime timestamp, List<BilledItem> items, long discountBasisPoints, long totalCents,
+                long netTotalCents) {
+        this.id = id;
+        this.timestamp = timestamp;
+        List<BilledItem> copies = new ArrayList<>(items.size());
+        for (BilledItem item : items) {
+            copies.add(new BilledItem(item.getId(), item.getName(), item.getPrice(), item.getQuantity()));
+        }
+        this.items = Collections.unmodifiableList(copies);
+        this.discountBasisPoints = discountBasisPoints;
+        this.totalCents = totalCents;
+        this.netTotalCents = netTotalCents;
+    }
+
+    /**
+     * Gets the bill number, or 0 for a bill made before bills were numbered
+     */
+    public long getId() {
+        return id;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public List<BilledItem> getItems() {
+        return items;
+    }
+
+    /**
+     * Gets the discount in hundredths of a percent
+     */
+    public long getDiscountBasisPoints() {
+        return discountBasisPoints;
+    }
+
+    public Money getTotal() {
+        return Money.ofCents(totalCents);
+    }
+
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    public Money getNetTotal() {
+        return Money.ofCents(netTotalCents);
+    }
+
+    public long getNetTotalCents() {
+        return netTotalCents;
+    }
+
+    @Override
+    public String toString() {
+        return "Bill{" +
+                "id=" + id +
+                ", timestamp=" + timestamp +
+                ", items=" + items +
+                ", discount=" + Money.formatPercent(discountBasisPoints) + "%" +
+                ", total=" + Money.format(totalCents) +
+                ", netTotal=" + Money.format(netTotalCents) +
+                '}';
+    }
+}
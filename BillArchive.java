@@ -0,0 +1,497 @@
+package controller;
+
+import model.Bill;
+import model.BilledItem;
+import model.Money;
+import util.CsvParser;
+import util.DurableAppender;
+import util.FileUtils;
+import util.SimpleLogger;
+import util.TimestampCodec;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * Archive of every saved bill, in a few append-only files instead of two files per bill.
+ *
+ * Bills are appended to one segment per calendar month under bills/, named bills_YYYY-MM.log,
+ * each as one record:
+ * <pre>
+ *   B,billId,yyyy-MM-dd HH:mm:ss,discount,total,net,itemCount
+ *   I,productId,price,quantity,name                            one line per item
+ * </pre>
+ * A bills_YYYY-MM.idx sidecar maps each bill id to the offset of its record, so a receipt is
+ * read and rendered only when it is asked for. A bill is looked for from the month its number
+ * was reserved in (see {@link BillSequence}), which is nearly always the month it was made in. On load the index is checked against its
+ * segment and the bills appended after its last entry are added; a record that a crash cut
+ * short at the end of the segment is cut off. The legacy per-bill text and CSV files can be
+ * produced on demand with {@link #exportLegacy}.
+ */
+public class BillArchive {
+    private static final String ARCHIVE_DIR = "bills";
+    private static final String SEGMENT_PREFIX = "bills_";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final DateTimeFormatter RECEIPT_DATE_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+    private static final DateTimeFormatter RECEIPT_TIME_FORMATTER = DateTimeFormatter.ofPattern("hh:mm a");
+    private static final int READ_SIZE = 4096;
+    private static BillArchive instance;
+
+    private final Path directory;
+    private final Map<YearMonth, Segment> segments;
+
+    /**
+     * The segment of one month and the offsets of its bills
+     */
+    private static class Segment {
+        private final Path file;
+        private final Path indexFile;
+        private final Map<String, Long> offsets = new LinkedHashMap<>();
+        private boolean loaded;
+
+        private Segment(Path file, Path indexFile) {
+            this.file = file;
+            this.indexFile = indexFile;
+        }
+
+        /**
+         * Records where a bill starts, keeping the offsets in file order; a later bill under
+         * the same id takes its place
+         */
+        private void put(String billId, long offset) {
+            offsets.remove(billId);
+            offsets.put(billId, offset);
+        }
+    }
+
+    /**
+     * Receives each complete bill found in a segment
+     */
+    private interface BillHandler {
+        void onBill(String billId, long offset, Bill bill);
+    }
+
+    private BillArchive(Path directory) {
+        this.directory = directory;
+        this.segments = new HashMap<>();
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            SimpleLogger.logError("Error preparing bill archive directory", e);
+        }
+    }
+
+    public static synchronized BillArchive getInstance() {
+        if (instance == null) {
+            instance = new BillArchive(Paths.get(ARCHIVE_DIR));
+        }
+        return instance;
+    }
+
+    /**
+     * Appends a bill to the segment for the month it was made in
+     */
+    public synchronized void append(String billId, Bill bill) throws IOException {
+        Segment segment = loadedSegment(YearMonth.from(bill.getTimestamp()));
+        List<BilledItem> items = bill.getItems();
+        StringBuilder record = new StringBuilder(64 + items.size() * 48);
+        record.append("B,").append(billId).append(',');
+        TimestampCodec.appendTo(record, bill.getTimestamp()).append(',');
+        Money.appendTo(record, bill.getDiscountBasisPoints()).append(',');
+        Money.appendTo(record, bill.getTotalCents()).append(',');
+        Money.appendTo(record, bill.getNetTotalCents()).append(',').append(items.size()).append('\n');
+        for (BilledItem item : items) {
+            record.append("I,").append(item.getId()).append(',');
+            Money.appendTo(record, item.getPriceCents()).append(',')
+                    .append(item.getQuantity()).append(',').append(item.getName()).append('\n');
+        }
+
+        DurableAppender.Commit write = DurableAppender.forFile(segment.file)
+                .submit(record.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            write.await();
+        } catch (IOException e) {
+            // Part of the record may be in the segment; reloading cuts it off before the next append
+            segment.loaded = false;
+            throw e;
+        }
+        long offset = write.getPosition();
+        segment.put(billId, offset);
+        try {
+            FileUtils.appendToDerivedFile(segment.indexFile, billId + "," + offset + "\n");
+        } catch (IOException e) {
+            // The bill is in the segment, where the next load finds it again
+            SimpleLogger.logError("Error updating bill index " + segment.indexFile, e);
+        }
+    }
+
+    /**
+     * Checks whether a bill is archived
+     */
+    public synchronized boolean contains(String billId) {
+        return locate(billId) != null;
+    }
+
+    /**
+     * Reads an archived bill, or returns null if there is none with the given id
+     */
+    public synchronized Bill find(String billId) throws IOException {
+        Segment segment = locate(billId);
+        return segment == null ? null : readBill(segment.file, segment.offsets.get(billId));
+    }
+
+    /**
+     * Renders the text receipt of an archived bill, or returns null if there is none with the given id
+     */
+    public String renderReceipt(String billId) throws IOException {
+        Bill bill = find(billId);
+        return bill == null ? null : formatReceipt(bill);
+    }
+
+    /**
+     * Writes the bills made between two dates inclusive as Bill_&lt;id&gt;.txt and Bill_&lt;id&gt;.csv
+     * files in a directory, as bills were saved before the archive, and returns how many were written
+     */
+    public synchronized int exportLegacy(LocalDate from, LocalDate to, Path target) throws IOException {
+        Files.createDirectories(target);
+        int[] written = {0};
+        IOException[] failure = {null};
+        for (YearMonth month = YearMonth.from(from); !month.isAfter(YearMonth.from(to)); month = month.plusMonths(1)) {
+            Path file = segmentFile(month, SEGMENT_SUFFIX);
+            if (!Files.exists(file)) {
+                continue;
+            }
+            scan(file, 0, (billId, offset, bill) -> {
+                LocalDate day = bill.getTimestamp().toLocalDate();
+                if (failure[0] != null || day.isBefore(from) || day.isAfter(to)) {
+                    return;
+                }
+                try {
+                    Files.write(target.resolve("Bill_" + billId + ".txt"), formatReceipt(bill).getBytes(StandardCharsets.UTF_8));
+                    Files.write(target.resolve("Bill_" + billId + ".csv"), formatCsv(bill).getBytes(StandardCharsets.UTF_8));
+                    written[0]++;
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        SimpleLogger.logInfo("Exported " + written[0] + " bills to " + target);
+        return written[0];
+    }
+
+    /**
+     * Renders the text receipt of a bill
+     */
+    public static String formatReceipt(Bill bill) {
+        LocalDateTime timestamp = bill.getTimestamp();
+        StringBuilder receipt = new StringBuilder(512);
+        receipt.append("----------------------------\n");
+        receipt.append("Supermarket Billing System\n");
+        receipt.append("Date: ").append(timestamp.format(RECEIPT_DATE_FORMATTER)).append("  Time: ").append(timestamp.format(RECEIPT_TIME_FORMATTER)).append("\n");
+        receipt.append("--------------------------------\n");
+
+        // Items header
+        receipt.append(String.format("%-6s %-12s %-8s %-4s %-10s%n", "ID", "Name", "Price", "Qty", "Subtotal"));
+
+        // Items
+        for (BilledItem item : bill.getItems()) {
+            receipt.append(String.format("%-6s %-12s %-8s %-4d %-10s%n",
+                    item.getId(),
+                    item.getName(),
+                    item.getPrice(),
+                    item.getQuantity(),
+                    item.getSubtotal()));
+        }
+
+        receipt.append("--------------------------------\n");
+        receipt.append("Total: ").append(bill.getTotal()).append("\n");
+        receipt.append("Discount: ").append(Money.formatPercent(bill.getDiscountBasisPoints())).append("%\n");
+        receipt.append("Net Amount: ").append(bill.getNetTotal()).append("\n");
+        receipt.append("--------------------------------\n");
+        receipt.append("Thank You! Visit Again.\n");
+        receipt.append("----------------------------\n");
+        return receipt.toString();
+    }
+
+    /**
+     * Renders the items of a bill as CSV
+     */
+    public static String formatCsv(Bill bill) {
+        StringBuilder csv = new StringBuilder(64 + bill.getItems().size() * 48);
+        csv.append("ID,Name,Price,Quantity,Subtotal\n");
+        for (BilledItem item : bill.getItems()) {
+            csv.append(item.getId()).append(',').append(item.getName()).append(',');
+            Money.appendTo(csv, item.getPriceCents()).append(',').append(item.getQuantity()).append(',');
+            Money.appendTo(csv, item.getSubtotalCents()).append('\n');
+        }
+        return csv.toString();
+    }
+
+    /**
+     * Gets the id a bill is archived under: its number, or for a bill made before bills were
+     * numbered the time it was made
+     */
+    public static String idOf(Bill bill) {
+        if (bill.getId() > 0) {
+            return Long.toString(bill.getId());
+        }
+        return TimestampCodec.appendFileStamp(new StringBuilder(TimestampCodec.LENGTH), bill.getTimestamp()).toString();
+    }
+
+    /**
+     * Finds the loaded segment holding a bill, or null if it is not archived. A numbered bill is
+     * looked for from the month its number was reserved in onwards; a bill archived under its
+     * time is in the month that names.
+     */
+    private Segment locate(String billId) {
+        YearMonth month;
+        YearMonth last;
+        long number = numberOf(billId);
+        if (number > 0) {
+            month = BillSequence.getInstance().getFirstMonth(number);
+            last = YearMonth.now();
+        } else {
+            try {
+                month = YearMonth.parse(billId.substring(0, 7), MONTH_FORMATTER);
+            } catch (DateTimeException | IndexOutOfBoundsException e) {
+                return null;
+            }
+            last = month;
+        }
+        for (; month != null && !month.isAfter(last); month = month.plusMonths(1)) {
+            if (!Files.exists(segmentFile(month, SEGMENT_SUFFIX))) {
+                continue;
+            }
+            Segment segment = loadedSegment(month);
+            if (segment.offsets.containsKey(billId)) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses the number a bill is archived under, or 0 if it is archived under its time
+     */
+    private static long numberOf(String billId) {
+        try {
+            return billId.indexOf('-') < 0 ? Long.parseLong(billId) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private Segment loadedSegment(YearMonth month) {
+        Segment segment = segments.computeIfAbsent(month,
+                m -> new Segment(segmentFile(m, SEGMENT_SUFFIX), segmentFile(m, INDEX_SUFFIX)));
+        if (!segment.loaded) {
+            try {
+                load(segment);
+            } catch (IOException e) {
+                System.err.println("Error reading bill archive: " + e.getMessage());
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * Reads a segment's index, checks it and brings it up to date with the segment
+     */
+    private void load(Segment segment) throws IOException {
+        segment.offsets.clear();
+        segment.loaded = true;
+        if (!Files.exists(segment.file)) {
+            Files.deleteIfExists(segment.indexFile);
+            return;
+        }
+
+        boolean valid = readIndex(segment) && validate(segment);
+        if (!valid) {
+            SimpleLogger.logInfo("Rebuilding bill index " + segment.indexFile);
+            segment.offsets.clear();
+        }
+
+        // Pick up bills appended after the index was last written
+        long scanFrom = 0;
+        for (long offset : segment.offsets.values()) {
+            scanFrom = offset;
+        }
+        StringBuilder added = new StringBuilder();
+        long end = scan(segment.file, scanFrom, (billId, offset, bill) -> {
+            Long known = segment.offsets.get(billId);
+            if (known == null || known < offset) {
+                segment.put(billId, offset);
+                added.append(billId).append(',').append(offset).append('\n');
+            }
+        });
+
+        if (end < Files.size(segment.file)) {
+            // The last record was cut short by a crash; cut it off so the next one starts cleanly
+            SimpleLogger.logWarning("Discarding incomplete last bill of " + segment.file);
+            try (FileChannel channel = FileChannel.open(segment.file, StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+            }
+        }
+
+        if (!valid) {
+            StringBuilder content = new StringBuilder(segment.offsets.size() * 32);
+            for (Map.Entry<String, Long> entry : segment.offsets.entrySet()) {
+                content.append(entry.getKey()).append(',').append(entry.getValue()).append('\n');
+            }
+            FileUtils.writeDerivedTextFile(segment.indexFile, content.toString());
+        } else if (added.length() > 0) {
+            FileUtils.appendToDerivedFile(segment.indexFile, added.toString());
+        }
+    }
+
+    private boolean readIndex(Segment segment) {
+        if (!Files.exists(segment.indexFile)) {
+            return false;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(segment.indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int comma = line.lastIndexOf(',');
+                segment.put(line.substring(0, comma), Long.parseLong(line.substring(comma + 1)));
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            SimpleLogger.logWarning("Could not read bill index " + segment.indexFile + ": " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Checks that the offsets increase and lie inside the segment, and that the last one
+     * starts the record of the bill it is listed for
+     */
+    private boolean validate(Segment segment) throws IOException {
+        long length = Files.size(segment.file);
+        long previous = -1;
+        String lastId = null;
+        for (Map.Entry<String, Long> entry : segment.offsets.entrySet()) {
+            long offset = entry.getValue();
+            if (offset <= previous || offset >= length) {
+                return false;
+            }
+            previous = offset;
+            lastId = entry.getKey();
+        }
+        if (lastId == null) {
+            return true;
+        }
+        byte[] expected = ("B," + lastId + ",").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(expected.length);
+        try (FileChannel channel = FileChannel.open(segment.file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer, previous + buffer.position()) > 0) {
+                // Keep reading until the prefix is in
+            }
+        }
+        return !buffer.hasRemaining() && Arrays.equals(buffer.array(), expected)
+                && (previous == 0 || precededByNewline(segment.file, previous));
+    }
+
+    private static boolean precededByNewline(Path file, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.read(buffer, offset - 1) == 1 && buffer.get(0) == '\n';
+        }
+    }
+
+    /**
+     * Passes on each complete bill from an offset to the end of a segment, skipping anything
+     * unreadable, and returns the offset where an unfinished last record or line begins, or
+     * the end of the segment if there is none
+     */
+    private static long scan(Path file, long start, BillHandler handler) throws IOException {
+        String[][] header = {null};
+        long[] headerOffset = {0};
+        List<BilledItem> items = new ArrayList<>();
+        long end = CsvParser.parseFrom(file, start, false, row -> {
+            String line = row.getLine();
+            try {
+                if (line.startsWith("B,")) {
+                    header[0] = line.split(",");
+                    headerOffset[0] = row.getOffset();
+                    items.clear();
+                } else if (line.startsWith("I,") && header[0] != null) {
+                    String[] parts = line.split(",", 5);
+                    items.add(new BilledItem(parts[1], parts[4], Money.ofCents(Money.parseMinorUnits(parts[2])),
+                            Integer.parseInt(parts[3])));
+                } else {
+                    throw new IllegalArgumentException("unexpected line");
+                }
+                if (items.size() == Integer.parseInt(header[0][6])) {
+                    Bill bill = new Bill(numberOf(header[0][1]), TimestampCodec.parse(header[0][2]), items,
+                            Money.parseMinorUnits(header[0][3]), Money.parseMinorUnits(header[0][4]),
+                            Money.parseMinorUnits(header[0][5]));
+                    String[] complete = header[0];
+                    header[0] = null;
+                    handler.onBill(complete[1], headerOffset[0], bill);
+                }
+            } catch (RuntimeException e) {
+                SimpleLogger.logWarning("Skipping unreadable bill archive line in " + file + ": " + line);
+                header[0] = null;
+            }
+        });
+        return header[0] != null ? headerOffset[0] : end;
+    }
+
+    /**
+     * Reads the record of one bill starting at an offset
+     */
+    private static Bill readBill(Path file, long offset) throws IOException {
+        byte[] bytes = new byte[READ_SIZE];
+        int length = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (true) {
+                int read = channel.read(ByteBuffer.wrap(bytes, length, bytes.length - length), offset + length);
+                if (read > 0) {
+                    length += read;
+                }
+                String text = new String(bytes, 0, length, StandardCharsets.UTF_8);
+                String[] lines = text.split("\n", -1);
+                String[] header = lines[0].split(",");
+                int itemCount = Integer.parseInt(header[6]);
+                if (lines.length > itemCount + 1) {
+                    List<BilledItem> items = new ArrayList<>(itemCount);
+                    for (int i = 1; i <= itemCount; i++) {
+                        String[] parts = lines[i].split(",", 5);
+                        items.add(new BilledItem(parts[1], parts[4], Money.ofCents(Money.parseMinorUnits(parts[2])),
+                                Integer.parseInt(parts[3])));
+                    }
+                    return new Bill(numberOf(header[1]), TimestampCodec.parse(header[2]), items,
+                            Money.parseMinorUnits(header[3]), Money.parseMinorUnits(header[4]),
+                            Money.parseMinorUnits(header[5]));
+                }
+                if (read <= 0) {
+                    throw new IOException("Bill record at offset " + offset + " of " + file + " is incomplete");
+                }
+                if (length == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+            }
+        }
+    }
+
+    private Path segmentFile(YearMonth month, String suffix) {
+        return directory.resolve(SEGMENT_PREFIX + month.format(MONTH_FORMATTER) + suffix);
+    }
+}
@@ -0,0 +1,146 @@
+package controller;
+
+import util.FileUtils;
+import util.SimpleLogger;
+import util.TimestampCodec;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Persistent sequence of bill numbers, handed out in blocks so tills never wait on each other.
+ *
+ * Each till takes a {@link Terminal} and numbers its bills from a block of BLOCK_SIZE ids
+ * reserved for it alone; only taking the next block goes through the shared sequence. A block
+ * is on disk before any of its ids are used, so ids are never reused after a restart, though
+ * the unused rest of a block is skipped. The file records each block as it is reserved:
+ * <pre>
+ *   first,end,yyyy-MM-dd HH:mm:ss      ids first (inclusive) to end (exclusive), reserved at that time
+ * </pre>
+ * Bills are made after their block is reserved, so the time a block was reserved also tells
+ * where to start looking for one of its bills.
+ */
+public class BillSequence {
+    private static final String SEQUENCE_FILE = "data/bills.seq";
+    private static final int BLOCK_SIZE = 100;
+    private static BillSequence instance;
+
+    private final Path file;
+    private final NavigableMap<Long, YearMonth> blockMonths;
+    private long next;
+
+    /**
+     * Numbers the bills of one till from blocks of its own
+     */
+    public static class Terminal {
+        private final BillSequence sequence;
+        private long next;
+        private long end;
+
+        private Terminal(BillSequence sequence) {
+            this.sequence = sequence;
+        }
+
+        /**
+         * Gets the next bill number, reserving a new block when this till's block is used up
+         */
+        public synchronized long next() throws IOException {
+            if (next == end) {
+                long first = sequence.reserveBlock();
+                next = first;
+                end = first + BLOCK_SIZE;
+            }
+            return next++;
+        }
+    }
+
+    private BillSequence(Path file) {
+        this.file = file;
+        this.blockMonths = new TreeMap<>();
+        this.next = 1;
+        read();
+    }
+
+    public static synchronized BillSequence getInstance() {
+        if (instance == null) {
+            instance = new BillSequence(Paths.get(SEQUENCE_FILE));
+        }
+        return instance;
+    }
+
+    /**
+     * Creates a till's numbering; it reserves its first block when first used
+     */
+    public Terminal newTerminal() {
+        return new Terminal(this);
+    }
+
+    /**
+     * Gets the month an id's block was reserved in, before which none of its bills were made,
+     * or null if the id was never handed out
+     */
+    public synchronized YearMonth getFirstMonth(long id) {
+        Map.Entry<Long, YearMonth> block = blockMonths.floorEntry(id);
+        if (block == null || id >= next) {
+            return null;
+        }
+        return block.getValue();
+    }
+
+    private synchronized long reserveBlock() throws IOException {
+        long first = next;
+        LocalDateTime now = LocalDateTime.now();
+        StringBuilder record = new StringBuilder(48);
+        record.append(first).append(',').append(first + BLOCK_SIZE).append(',');
+        TimestampCodec.appendTo(record, now).append('\n');
+        FileUtils.safeAppendToFile(file, record.toString());
+        next = first + BLOCK_SIZE;
+        blockMonths.put(first, YearMonth.from(now));
+        return first;
+    }
+
+    private void read() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        String content;
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            int end = bytes.length;
+            while (end > 0 && bytes[end - 1] != '\n') {
+                end--;
+            }
+            if (end < bytes.length) {
+                // A block whose line was cut short by a crash was never handed out
+                SimpleLogger.logWarning("Discarding incomplete last line of bill sequence " + file);
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(end);
+                }
+            }
+            content = new String(bytes, 0, end, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            SimpleLogger.logError("Error reading bill sequence " + file, e);
+            throw new RuntimeException("Failed to read bill sequence", e);
+        }
+
+        for (String line : content.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            try {
+                String[] parts = line.split(",");
+                long first = Long.parseLong(parts[0]);
+                next = Math.max(next, Long.parseLong(parts[1]));
+                blockMonths.put(first, YearMonth.from(TimestampCodec.parse(parts[2])));
+            } catch (RuntimeException e) {
+                SimpleLogger.logWarning("Skipping unreadable bill sequence entry: " + line);
+            }
+        }
+    }
+}
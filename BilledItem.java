@@ -3,19 +3,19 @@ package model;
 public class BilledItem {
     private String id;
     private String name;
-    private double price;
+    private long priceCents;
     private int quantity;
-    private double subtotal;
+    private long subtotalCents;
 
     public BilledItem() {
     }
 
-    public BilledItem(String id, String name, double price, int quantity) {
+    public BilledItem(String id, String name, Money price, int quantity) {
         this.id = id;
         this.name = name;
-        this.price = price;
+        this.priceCents = price.getCents();
         this.quantity = quantity;
-        this.subtotal = price * quantity;
+        this.subtotalCents = priceCents * quantity;
     }
 
     // Getters
@@ -27,16 +27,24 @@ public class BilledItem {
         return name;
     }
 
-    public double getPrice() {
-        return price;
+    public Money getPrice() {
+        return Money.ofCents(priceCents);
+    }
+
+    public long getPriceCents() {
+        return priceCents;
     }
 
     public int getQuantity() {
         return quantity;
     }
 
-    public double getSubtotal() {
-        return subtotal;
+    public Money getSubtotal() {
+        return Money.ofCents(subtotalCents);
+    }
+
+    public long getSubtotalCents() {
+        return subtotalCents;
     }
 
     // Setters
@@ -48,18 +56,18 @@ public class BilledItem {
         this.name = name;
     }
 
-    public void setPrice(double price) {
-        this.price = price;
-        this.subtotal = this.price * this.quantity;
+    public void setPrice(Money price) {
+        this.priceCents = price.getCents();
+        this.subtotalCents = this.priceCents * this.quantity;
     }
 
     public void setQuantity(int quantity) {
         this.quantity = quantity;
-        this.subtotal = this.price * this.quantity;
+        this.subtotalCents = this.priceCents * this.quantity;
     }
 
-    public void setSubtotal(double subtotal) {
-        this.subtotal = subtotal;
+    public void setSubtotal(Money subtotal) {
+        this.subtotalCents = subtotal.getCents();
     }
 
     @Override
@@ -67,9 +75,9 @@ public class BilledItem {
         return "BilledItem{" +
                 "id='" + id + '\'' +
                 ", name='" + name + '\'' +
-                ", price=" + price +
+                ", price=" + Money.format(priceCents) +
                 ", quantity=" + quantity +
-                ", subtotal=" + subtotal +
+                ", subtotal=" + Money.format(subtotalCents) +
                 '}';
     }
 }
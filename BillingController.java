@@ -1,244 +1,198 @@
 package controller;
 
 import model.Product;
+import model.Bill;
 import model.BilledItem;
+import model.Money;
+import model.Sale;
 import util.FileUtils;
 import util.SimpleLogger;
-import java.io.*;
-import java.nio.file.*;
+import java.io.IOException;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
-import javax.swing.JOptionPane;
-import javax.swing.JFrame;
-import java.awt.Desktop;
 
 public class BillingController {
-    private static final String PRODUCTS_CSV = "data/products.csv";
-    private static final String SALES_CSV = "data/sales.csv";
-    private static final String BILLS_DIR = "bills/";
-    private List<Product> products;
+    private static final Object CHECKOUT_LOCK = new Object();
+    private final CatalogService catalogService;
+    private final SalesStore salesStore;
+    private final LineItemLog lineItemLog;
+    private final CheckoutWriter checkoutWriter;
+    private final CheckoutJournal checkoutJournal;
+    private final BillArchive billArchive;
+    private final BillSequence.Terminal billNumbers;
 
     public BillingController() {
-        this.products = new ArrayList<>();
         FileUtils.ensureDirectories();
-        loadProducts();
-        ensureDirectoriesExist();
+        this.catalogService = CatalogService.getInstance();
+        this.salesStore = SalesStore.getInstance();
+        this.lineItemLog = LineItemLog.getInstance();
+        this.checkoutWriter = CheckoutWriter.getInstance();
+        this.checkoutJournal = CheckoutJournal.getInstance();
+        this.billArchive = BillArchive.getInstance();
+        this.billNumbers = BillSequence.getInstance().newTerminal();
         SimpleLogger.logInfo("BillingController initialized");
     }
 
-    private void ensureDirectoriesExist() {
-        // Create sales.csv with header if it doesn't exist
-        Path salesFile = Paths.get(SALES_CSV);
-        if (!Files.exists(salesFile)) {
-            try {
-                FileUtils.safeWriteTextFile(salesFile, "date,total,discount,netTotal\n");
-                SimpleLogger.logInfo("Created sales.csv with header");
-            } catch (IOException e) {
-                SimpleLogger.logError("Error creating sales.csv", e);
-            }
-        }
+    /**
+     * Re-reads the shared catalog from disk
+     */
+    public void loadProducts() {
+        catalogService.reload();
     }
 
-    public void loadProducts() {
-        File file = new File(PRODUCTS_CSV);
-        
-        if (!file.exists()) {
-            System.err.println("Products CSV file not found: " + PRODUCTS_CSV);
-            return;
-        }
+    public List<Product> getAllProducts() {
+        return catalogService.getAllProducts();
+    }
 
-        products.clear();
-        
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            // Skip header line
-            reader.readLine();
-            
-            while ((line = reader.readLine()) != null && !line.trim().isEmpty()) {
-                String[] parts = line.split(",");
-                if (parts.length == 5) {
-                    try {
-                        String id = parts[0].trim();
-                        String name = parts[1].trim();
-                        String category = parts[2].trim();
-                        double price = Double.parseDouble(parts[3].trim());
-                        int quantity = Integer.parseInt(parts[4].trim());
-                        products.add(new Product(id, name, category, price, quantity));
-                    } catch (NumberFormatException e) {
-                        System.err.println("Error parsing product: " + line);
-                    }
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Error reading products: " + e.getMessage());
-        }
+    /**
+     * Finds up to limit products matching a type-ahead query on id, name or category
+     */
+    public List<Product> searchProducts(String query, int limit) {
+        return catalogService.searchProducts(query, limit);
     }
 
-    public List<Product> getAllProducts() {
-        return new ArrayList<>(products);
+    /**
+     * Finds up to limit products in stock matching a type-ahead query; products out of stock do
+     * not count towards the limit
+     */
+    public List<Product> searchProductsInStock(String query, int limit) {
+        return catalogService.searchProductsInStock(query, limit);
     }
 
     public Product getProductById(String id) {
-        for (Product p : products) {
-            if (p.getId().equals(id)) {
-                return p;
-            }
+        return catalogService.getProductById(id);
+    }
+
+    public void addCatalogListener(CatalogService.CatalogListener listener) {
+        catalogService.addListener(listener);
+    }
+
+    public void removeCatalogListener(CatalogService.CatalogListener listener) {
+        catalogService.removeListener(listener);
+    }
+
+    /**
+     * Reserves a bill's stock straight away, then hands the bill to the checkout writer to
+     * journal it, archive it and record the sale in the background. Throws if stock is short,
+     * in which case nothing is reserved or queued. The bill is numbered from this controller's
+     * own block of bill numbers.
+     */
+    public Bill checkout(List<BilledItem> items, long discountBasisPoints, Money totalAmount, Money netAmount,
+                         CheckoutWriter.CheckoutListener listener) {
+        long billNumber;
+        try {
+            billNumber = billNumbers.next();
+        } catch (IOException e) {
+            SimpleLogger.logError("Error reserving bill numbers", e);
+            throw new RuntimeException("Failed to number bill", e);
+        }
+        // Whole seconds, so the journaled bill is exactly the one that is saved
+        Bill bill = new Bill(billNumber, LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS), items,
+                discountBasisPoints, totalAmount.getCents(), netAmount.getCents());
+        Map<String, Integer> quantitiesById = new LinkedHashMap<>();
+        for (BilledItem item : bill.getItems()) {
+            quantitiesById.merge(item.getId(), item.getQuantity(), Integer::sum);
         }
-        return null;
+        long checkoutId;
+        // Checkouts must reserve stock in id order
+        synchronized (CHECKOUT_LOCK) {
+            checkoutId = checkoutJournal.nextId();
+            catalogService.reserveCheckoutStock(quantitiesById, checkoutId);
+        }
+        checkoutWriter.submit(bill, () -> recordCheckout(checkoutId, bill), listener);
+        return bill;
     }
 
-    public void updateProductStock(String id, int qtySold) {
-        for (Product product : products) {
-            if (product.getId().equals(id)) {
-                int newQuantity = product.getQuantity() - qtySold;
-                if (newQuantity < 0) {
-                    throw new IllegalArgumentException("Insufficient stock for product: " + id);
-                }
-                product.setQuantity(newQuantity);
-                break;
+    /**
+     * Finishes the checkouts a crash left incomplete, oldest first. Their stock was taken when
+     * the catalog was loaded; the bill, the sale and its items are recorded unless they already were.
+     */
+    public void recoverCheckouts() {
+        for (CheckoutJournal.PendingCheckout checkout : checkoutJournal.getIncomplete()) {
+            long checkoutId = checkout.getId();
+            try {
+                completeCheckout(checkoutId, checkout.getBill(), true);
+                SimpleLogger.logInfo("Recovered interrupted checkout " + checkoutId);
+            } catch (IOException | RuntimeException e) {
+                SimpleLogger.logError("Could not recover checkout " + checkoutId + "; it will be retried on the next start", e);
             }
         }
-        saveProductsToCSV();
     }
 
-    private void saveProductsToCSV() {
-        Path file = Paths.get(PRODUCTS_CSV);
-        
-        StringBuilder content = new StringBuilder();
-        content.append("id,name,category,price,quantity\n");
-        for (Product product : products) {
-            content.append(String.format("%s,%s,%s,%.2f,%d\n",
-                    product.getId(),
-                    product.getName(),
-                    product.getCategory(),
-                    product.getPrice(),
-                    product.getQuantity()));
-        }
-        
+    /**
+     * Journals a checkout's bill, which makes its reserved stock durable, then saves it.
+     * Runs on the checkout writer.
+     */
+    private String recordCheckout(long checkoutId, Bill bill) throws IOException {
         try {
-            FileUtils.safeWriteTextFile(file, content.toString());
-            SimpleLogger.logInfo("Products CSV saved successfully");
+            checkoutJournal.begin(checkoutId, bill);
         } catch (IOException e) {
-            SimpleLogger.logError("Error saving products CSV", e);
-            throw new RuntimeException("Failed to save products", e);
+            SimpleLogger.logError("Error journaling checkout", e);
+            catalogService.cancelCheckoutStock(checkoutId);
+            throw new IOException("The checkout could not be recorded, so it was cancelled and its stock put back", e);
+        }
+        catalogService.checkoutJournaled(checkoutId);
+        try {
+            return completeCheckout(checkoutId, bill, false);
+        } catch (IOException | RuntimeException e) {
+            throw new IOException(e.getMessage() + ". Stock was already taken; the bill will be saved again when the application next starts", e);
         }
     }
 
-    public void saveBill(List<BilledItem> items, double discountPercent, double totalAmount, double netAmount) {
-        LocalDateTime now = LocalDateTime.now();
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
-        DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("hh:mm a");
-        DateTimeFormatter fileFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
-        
-        String timestamp = now.format(fileFormatter);
-        String txtFileName = "Bill_" + timestamp + ".txt";
-        String csvFileName = "Bill_" + timestamp + ".csv";
-        
-        Path txtBillFile = Paths.get(BILLS_DIR + txtFileName);
-        Path csvBillFile = Paths.get(BILLS_DIR + csvFileName);
-        
+    /**
+     * Archives a journaled bill and records its sale, then marks the checkout complete.
+     * When recovering, the bill, sale and items are only written if they are not there already.
+     */
+    private String completeCheckout(long checkoutId, Bill bill, boolean recovering) throws IOException {
+        String billId = saveBill(bill, recovering);
+        recordSale(billId, bill, recovering);
+        checkoutJournal.commit(checkoutId);
+        return billId;
+    }
+
+    private String saveBill(Bill bill, boolean skipSaved) {
+        String billId = BillArchive.idOf(bill);
         try {
-            // Create text bill content
-            StringBuilder billContent = new StringBuilder();
-            billContent.append("----------------------------\n");
-            billContent.append("Supermarket Billing System\n");
-            billContent.append("Date: ").append(now.format(dateFormatter)).append("  Time: ").append(now.format(timeFormatter)).append("\n");
-            billContent.append("--------------------------------\n");
-            
-            // Items header
-            billContent.append(String.format("%-6s %-12s %-8s %-4s %-10s%n", "ID", "Name", "Price", "Qty", "Subtotal"));
-            
-            // Items
-            for (BilledItem item : items) {
-                billContent.append(String.format("%-6s %-12s %-8.2f %-4d %-10.2f%n",
-                        item.getId(),
-                        item.getName(),
-                        item.getPrice(),
-                        item.getQuantity(),
-                        item.getSubtotal()));
+            if (!skipSaved || !billArchive.contains(billId)) {
+                billArchive.append(billId, bill);
             }
-            
-            billContent.append("--------------------------------\n");
-            billContent.append(String.format("Total: %.2f%n", totalAmount));
-            billContent.append(String.format("Discount: %.0f%%%n", discountPercent));
-            billContent.append(String.format("Net Amount: %.2f%n", netAmount));
-            billContent.append("--------------------------------\n");
-            billContent.append("Thank You! Visit Again.\n");
-            billContent.append("----------------------------\n");
-            
-            // Save text bill atomically
-            FileUtils.safeWriteTextFile(txtBillFile, billContent.toString());
-            
-            // Create CSV bill content
-            StringBuilder csvContent = new StringBuilder();
-            csvContent.append("ID,Name,Price,Quantity,Subtotal\n");
-            for (BilledItem item : items) {
-                csvContent.append(String.format("%s,%s,%.2f,%d,%.2f\n",
-                        item.getId(),
-                        item.getName(),
-                        item.getPrice(),
-                        item.getQuantity(),
-                        item.getSubtotal()));
-            }
-            
-            // Save CSV bill atomically
-            FileUtils.safeWriteTextFile(csvBillFile, csvContent.toString());
-            
-            SimpleLogger.logInfo(String.format("Bill saved successfully: %s (Items: %d, Total: %.2f)", 
-                    txtFileName, items.size(), netAmount));
-            
+            SimpleLogger.logInfo(String.format("Bill saved successfully: %s (Items: %d, Total: %s)", 
+                    billId, bill.getItems().size(), bill.getNetTotal()));
+            return billId;
         } catch (IOException e) {
             SimpleLogger.logError("Error saving bill", e);
             throw new RuntimeException("Failed to save bill", e);
         }
     }
 
-    public void recordSale(double total, double discount, double netTotal) {
-        LocalDateTime now = LocalDateTime.now();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        
-        String saleRecord = String.format("%s,%.2f,%.2f,%.2f\n",
-                now.format(formatter),
-                total,
-                discount,
-                netTotal);
+    /**
+     * Records a bill's sale in the sales partition for its month and its items in the
+     * line-item log, under the id of the bill
+     */
+    private void recordSale(String saleId, Bill bill, boolean skipRecorded) {
+        Sale sale = new Sale(bill.getId(), bill.getTimestamp(), bill.getTotalCents(), bill.getDiscountBasisPoints(),
+                bill.getNetTotalCents());
         
         try {
-            FileUtils.safeAppendToFile(Paths.get(SALES_CSV), saleRecord);
-            SimpleLogger.logInfo(String.format("Sale recorded: Total=%.2f, Discount=%.2f, Net=%.2f", 
-                    total, discount, netTotal));
+            if (!skipRecorded || !salesStore.contains(sale)) {
+                salesStore.append(sale);
+            }
+            if (!skipRecorded || !lineItemLog.contains(saleId, sale.getTimestamp())) {
+                lineItemLog.append(saleId, sale.getTimestamp(), bill.getItems());
+            }
+            SimpleLogger.logInfo(String.format("Sale recorded: Total=%s, Discount=%s%%, Net=%s", 
+                    bill.getTotal(), Money.formatPercent(bill.getDiscountBasisPoints()), bill.getNetTotal()));
         } catch (IOException e) {
             SimpleLogger.logError("Error recording sale", e);
             throw new RuntimeException("Failed to record sale", e);
         }
     }
 
-    public boolean validateStock(String productId, int requestedQuantity) {
-        Product product = getProductById(productId);
-        if (product == null) {
-            return false;
-        }
-        return product.getQuantity() >= requestedQuantity;
-    }
-    
     /**
-     * Shows a success dialog with option to open the bills folder
+     * Gets the number of bills handed to the checkout writer but not yet saved
      */
-    public void showBillSuccessDialog(JFrame parent, String billFileName) {
-        String message = String.format("Bill generated successfully!\n\nFile: %s\n\nWould you like to open the bills folder?", billFileName);
-        
-        int option = JOptionPane.showConfirmDialog(parent, message, "Bill Generated", 
-                JOptionPane.YES_NO_OPTION, JOptionPane.INFORMATION_MESSAGE);
-        
-        if (option == JOptionPane.YES_OPTION) {
-            try {
-                Desktop.getDesktop().open(new File(BILLS_DIR));
-                SimpleLogger.logInfo("Opened bills folder for user");
-            } catch (IOException e) {
-                SimpleLogger.logError("Error opening bills folder", e);
-                JOptionPane.showMessageDialog(parent, "Could not open bills folder.", "Error", JOptionPane.ERROR_MESSAGE);
-            }
-        }
+    public int getPendingBillCount() {
+        return checkoutWriter.getPendingCount();
     }
 }
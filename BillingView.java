@@ -8,21 +8,29 @@ import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.List;
 import controller.BillingController;
+import controller.CatalogService;
+import controller.CheckoutWriter;
 import model.Product;
+import model.Bill;
 import model.BilledItem;
+import model.Money;
 
 public class BillingView extends JFrame {
+    private static final int SEARCH_RESULT_LIMIT = 500;
+
     private BillingController controller;
+    private final CatalogService.CatalogListener catalogListener = () -> SwingUtilities.invokeLater(this::loadProductData);
     
     // Product table components
     private JTable productTable;
-    private DefaultTableModel productTableModel;
+    private ProductTableModel productTableModel;
     
     // Bill table components
     private JTable billTable;
     private DefaultTableModel billTableModel;
     
     // Input components
+    private JTextField searchField;
     private JTextField quantityField;
     private JTextField discountField;
     
@@ -36,12 +44,25 @@ public class BillingView extends JFrame {
     private JLabel totalLabel;
     private JLabel discountLabel;
     private JLabel netTotalLabel;
+    private JLabel checkoutStatusLabel;
     
     // Data
     private List<BilledItem> currentBill;
-    private double currentTotal;
-    private double currentDiscount;
-    private double currentNetTotal;
+    private long currentTotalCents;
+    private long currentDiscountBasisPoints;
+    private long currentNetTotalCents;
+    private String lastSavedBill;
+    private final CheckoutWriter.CheckoutListener checkoutListener = new CheckoutWriter.CheckoutListener() {
+        @Override
+        public void billSaved(Bill bill, String billId) {
+            handleBillSaved(bill, billId);
+        }
+
+        @Override
+        public void billFailed(Bill bill, Exception error) {
+            handleBillFailed(bill, error);
+        }
+    };
 
     public BillingView() {
         controller = new BillingController();
@@ -52,17 +73,13 @@ public class BillingView extends JFrame {
         configureFrame();
         loadProductData();
         updateTotals();
+        controller.addCatalogListener(catalogListener);
     }
 
     private void initializeComponents() {
         // Product table
         String[] productColumns = {"ID", "Name", "Category", "Price", "Stock"};
-        productTableModel = new DefaultTableModel(productColumns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        productTableModel = new ProductTableModel(productColumns);
         productTable = new JTable(productTableModel);
         productTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         
@@ -78,6 +95,7 @@ public class BillingView extends JFrame {
         billTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         
         // Input fields
+        searchField = new JTextField(20);
         quantityField = new JTextField(10);
         discountField = new JTextField(10);
         
@@ -91,6 +109,7 @@ public class BillingView extends JFrame {
         totalLabel = new JLabel("Total: $0.00");
         discountLabel = new JLabel("Discount: 0%");
         netTotalLabel = new JLabel("Net Total: $0.00");
+        checkoutStatusLabel = new JLabel(" ");
         
         // Style labels
         Font labelFont = new Font("Arial", Font.BOLD, 14);
@@ -115,6 +134,12 @@ public class BillingView extends JFrame {
         // Left panel - Products
         JPanel leftPanel = new JPanel(new BorderLayout());
         
+        // Type-ahead search
+        JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        searchPanel.add(new JLabel("Search:"));
+        searchPanel.add(searchField);
+        leftPanel.add(searchPanel, BorderLayout.NORTH);
+        
         // Product table
         JScrollPane productScrollPane = new JScrollPane(productTable);
         productScrollPane.setPreferredSize(new Dimension(400, 200));
@@ -168,6 +193,12 @@ public class BillingView extends JFrame {
         gbc.gridx = 1;
         billControlPanel.add(backButton, gbc);
         
+        // Background save status
+        gbc.gridx = 0;
+        gbc.gridy = 4;
+        gbc.gridwidth = 2;
+        billControlPanel.add(checkoutStatusLabel, gbc);
+        
         rightPanel.add(billControlPanel, BorderLayout.SOUTH);
         
         mainPanel.add(leftPanel);
@@ -182,6 +213,24 @@ public class BillingView extends JFrame {
         backButton.addActionListener(e -> handleBack());
         refreshButton.addActionListener(e -> handleRefresh());
         
+        // Filter the product table as the cashier types
+        searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent e) {
+                loadProductData();
+            }
+            
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent e) {
+                loadProductData();
+            }
+            
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {
+                loadProductData();
+            }
+        });
+        
         // Auto-calculate totals when discount changes
         discountField.addActionListener(e -> updateTotals());
         
@@ -202,20 +251,22 @@ public class BillingView extends JFrame {
     }
 
     private void loadProductData() {
-        controller.loadProducts();
-        productTableModel.setRowCount(0);
-        
-        for (Product product : controller.getAllProducts()) {
-            if (product.getQuantity() > 0) { // Only show products with stock
-                productTableModel.addRow(new Object[]{
-                    product.getId(),
-                    product.getName(),
-                    product.getCategory(),
-                    String.format("%.2f", product.getPrice()),
-                    product.getQuantity()
-                });
+        String query = searchField.getText().trim();
+        if (!query.isEmpty()) {
+            // Filtered inside the search, so the limit counts only products that can be sold
+            productTableModel.setProducts(controller.searchProductsInStock(query, SEARCH_RESULT_LIMIT));
+            return;
+        }
+        
+        // Only show products with stock
+        List<Product> products = controller.getAllProducts();
+        List<Product> inStock = new ArrayList<>(products.size());
+        for (Product product : products) {
+            if (product.getQuantity() > 0) {
+                inStock.add(product);
             }
         }
+        productTableModel.setProducts(inStock);
     }
 
     private void handleAddToBill() {
@@ -238,10 +289,11 @@ public class BillingView extends JFrame {
                 return;
             }
             
-            String productId = productTableModel.getValueAt(selectedRow, 0).toString();
-            String productName = productTableModel.getValueAt(selectedRow, 1).toString();
-            double price = Double.parseDouble(productTableModel.getValueAt(selectedRow, 3).toString());
-            int availableStock = Integer.parseInt(productTableModel.getValueAt(selectedRow, 4).toString());
+            Product selectedProduct = productTableModel.getProductAt(selectedRow);
+            String productId = selectedProduct.getId();
+            String productName = selectedProduct.getName();
+            Money price = selectedProduct.getPrice();
+            int availableStock = selectedProduct.getQuantity();
             
             if (quantity > availableStock) {
                 JOptionPane.showMessageDialog(this, "Insufficient stock! Available: " + availableStock, "Error", JOptionPane.ERROR_MESSAGE);
@@ -280,35 +332,36 @@ public class BillingView extends JFrame {
 
     private void updateBillTable() {
         billTableModel.setRowCount(0);
-        currentTotal = 0;
+        currentTotalCents = 0;
         
         for (BilledItem item : currentBill) {
             billTableModel.addRow(new Object[]{
                 item.getId(),
                 item.getName(),
-                String.format("%.2f", item.getPrice()),
+                Money.format(item.getPriceCents()),
                 item.getQuantity(),
-                String.format("%.2f", item.getSubtotal())
+                Money.format(item.getSubtotalCents())
             });
-            currentTotal += item.getSubtotal();
+            currentTotalCents += item.getSubtotalCents();
         }
     }
 
     private void updateTotals() {
         try {
-            currentDiscount = Double.parseDouble(discountField.getText().trim());
-            if (currentDiscount < 0) currentDiscount = 0;
-            if (currentDiscount > 100) currentDiscount = 100;
+            // Discount percent is kept in hundredths of a percent (0 - 10000)
+            currentDiscountBasisPoints = Money.parseMinorUnits(discountField.getText());
+            if (currentDiscountBasisPoints < 0) currentDiscountBasisPoints = 0;
+            if (currentDiscountBasisPoints > 10000) currentDiscountBasisPoints = 10000;
         } catch (NumberFormatException e) {
-            currentDiscount = 0;
+            currentDiscountBasisPoints = 0;
         }
         
-        double discountAmount = currentTotal * (currentDiscount / 100);
-        currentNetTotal = currentTotal - discountAmount;
+        long discountAmountCents = Money.discountAmount(currentTotalCents, currentDiscountBasisPoints);
+        currentNetTotalCents = currentTotalCents - discountAmountCents;
         
-        totalLabel.setText(String.format("Total: $%.2f", currentTotal));
-        discountLabel.setText(String.format("Discount: %.0f%%", currentDiscount));
-        netTotalLabel.setText(String.format("Net Total: $%.2f", currentNetTotal));
+        totalLabel.setText("Total: $" + Money.format(currentTotalCents));
+        discountLabel.setText("Discount: " + Money.formatPercent(currentDiscountBasisPoints) + "%");
+        netTotalLabel.setText("Net Total: $" + Money.format(currentNetTotalCents));
     }
 
     private void handleGenerateBill() {
@@ -319,40 +372,59 @@ public class BillingView extends JFrame {
         
         int confirm = JOptionPane.showConfirmDialog(
                 this,
-                String.format("Generate bill for $%.2f?", currentNetTotal),
+                "Generate bill for $" + Money.format(currentNetTotalCents) + "?",
                 "Confirm Bill Generation",
                 JOptionPane.YES_NO_OPTION
         );
         
         if (confirm == JOptionPane.YES_OPTION) {
             try {
-                // Update stock for all items
-                for (BilledItem item : currentBill) {
-                    controller.updateProductStock(item.getId(), item.getQuantity());
-                }
-                
-                // Save bill file
-                controller.saveBill(currentBill, currentDiscount, currentTotal, currentNetTotal);
-                
-                // Record sale
-                controller.recordSale(currentTotal, currentDiscount, currentNetTotal);
-                
-                JOptionPane.showMessageDialog(this, "Bill generated successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-                
-                // Clear bill for next transaction
-                currentBill.clear();
-                updateBillTable();
-                updateTotals();
-                discountField.setText("");
-                loadProductData(); // Refresh product stock
-                
+                // Reserve stock now; the bill and the sale record are saved in the background
+                controller.checkout(currentBill, currentDiscountBasisPoints,
+                        Money.ofCents(currentTotalCents), Money.ofCents(currentNetTotalCents), checkoutListener);
             } catch (Exception e) {
                 JOptionPane.showMessageDialog(this, "Error generating bill: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                return;
             }
+            
+            // Clear bill for next transaction
+            currentBill.clear();
+            updateBillTable();
+            updateTotals();
+            discountField.setText("");
+            updateCheckoutStatus();
+        }
+    }
+
+    private void handleBillSaved(Bill bill, String billId) {
+        SwingUtilities.invokeLater(() -> {
+            lastSavedBill = billId;
+            updateCheckoutStatus();
+        });
+    }
+
+    private void handleBillFailed(Bill bill, Exception error) {
+        SwingUtilities.invokeLater(() -> {
+            updateCheckoutStatus();
+            JOptionPane.showMessageDialog(this,
+                    "Error saving bill for $" + Money.format(bill.getNetTotalCents()) + ":\n\n" + error.getMessage() + ".",
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        });
+    }
+
+    private void updateCheckoutStatus() {
+        int pending = controller.getPendingBillCount();
+        if (pending > 0) {
+            checkoutStatusLabel.setText("Saving " + pending + (pending == 1 ? " bill..." : " bills..."));
+        } else if (lastSavedBill != null) {
+            checkoutStatusLabel.setText("Bill No. " + lastSavedBill + " saved");
+        } else {
+            checkoutStatusLabel.setText(" ");
         }
     }
 
     private void handleRefresh() {
+        controller.loadProducts();
         loadProductData();
         JOptionPane.showMessageDialog(this, "Product data refreshed!", "Info", JOptionPane.INFORMATION_MESSAGE);
     }
@@ -363,6 +435,12 @@ public class BillingView extends JFrame {
         dashboard.showWindow();
     }
 
+    @Override
+    public void dispose() {
+        controller.removeCatalogListener(catalogListener);
+        super.dispose();
+    }
+
     public void showWindow() {
         setVisible(true);
     }
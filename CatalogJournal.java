@@ -0,0 +1,313 @@
+package controller;
+
+import model.BilledItem;
+import model.Money;
+import model.Product;
+import model.ProductCatalog;
+import util.DurableAppender;
+import util.FileUtils;
+import util.SimpleLogger;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Append-only journal of catalog mutations recorded on top of the last products.csv checkpoint.
+ *
+ * The first line, #base,checksum,checkoutId, names the checksum of the products.csv content the
+ * journal applies to, so a journal left behind by a checkpoint that was interrupted after
+ * rewriting the CSV is ignored instead of being applied twice, and the latest checkout whose
+ * stock that CSV includes. Each following line is one mutation:
+ * <pre>
+ *   A,id,name,category,price,quantity   add a product
+ *   U,id,name,category,price,quantity   replace a product
+ *   D,id                                delete a product
+ *   T,checkoutId                        a checkout took the stock of its bill here
+ * </pre>
+ * The stock a checkout takes is recorded by the bill in the checkout journal, which is the only
+ * write a checkout waits for. The T line just marks where among the other mutations it was taken
+ * and goes out with whatever is appended next. On replay a T line applies its bill if that bill
+ * was journaled, and journaled bills whose T line never reached the file are applied at the end.
+ * Checkouts take stock in id order, so those up to the checkpoint's checkout id are in the CSV.
+ *
+ * A checkpoint copies the catalog at some journal offset and writes products.csv while
+ * changes go on being appended. Before the CSV is replaced it appends
+ * <pre>
+ *   #checkpoint,offset,checksum,checkoutId   the CSV with this checksum holds everything before offset
+ * </pre>
+ * so a crash before the journal is cut back still replays only the changes made after the copy.
+ */
+public class CatalogJournal {
+    private static final String BASE_PREFIX = "#base,";
+    private static final String CHECKPOINT_PREFIX = "#checkpoint,";
+
+    private final Path journalFile;
+    private final DurableAppender appender;
+    private long baseChecksum;
+    private long baseCheckoutId;
+    private int entryCount;
+    private long lastCheckoutId;
+
+    public CatalogJournal(Path journalFile) {
+        this.journalFile = journalFile;
+        this.appender = DurableAppender.forFile(journalFile);
+    }
+
+    /**
+     * Replays the journal onto a catalog freshly loaded from a checkpoint with the given checksum,
+     * taking the stock of the journaled checkouts that checkpoint does not include yet.
+     * Returns the number of mutations applied.
+     */
+    public int replay(ProductCatalog catalog, long checkpointChecksum, NavigableMap<Long, List<BilledItem>> checkouts) {
+        baseChecksum = checkpointChecksum;
+        baseCheckoutId = 0;
+        entryCount = 0;
+        lastCheckoutId = 0;
+
+        String content = "";
+        try {
+            if (Files.exists(journalFile)) {
+                content = new String(Files.readAllBytes(journalFile), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            SimpleLogger.logError("Error replaying catalog journal", e);
+        }
+
+        // Find where the changes not yet in the checkpoint start: after the header if the
+        // journal was started on this checkpoint, or at the offset a later checkpoint recorded
+        // if it replaced products.csv but was interrupted before cutting the journal back
+        String[] lines = content.split("\n", -1);
+        // An empty journal has not been written since the first products.csv, which holds no checkouts
+        long start = content.isEmpty() ? 0 : -1;
+        long includedCheckoutId = 0;
+        for (String line : lines) {
+            String[] parts = line.split(",");
+            if (line.startsWith(BASE_PREFIX) && parts.length >= 2 && parseLong(parts[1]) == checkpointChecksum) {
+                start = 0;
+                includedCheckoutId = parts.length > 2 ? parseLong(parts[2]) : 0;
+            } else if (line.startsWith(CHECKPOINT_PREFIX) && parts.length == 4 && parseLong(parts[2]) == checkpointChecksum) {
+                start = parseLong(parts[1]);
+                includedCheckoutId = parseLong(parts[3]);
+            }
+        }
+
+        if (start < 0) {
+            // The checkpoint already contains these changes (or was replaced by hand),
+            // including the stock of the checkouts journaled so far
+            SimpleLogger.logWarning("Catalog journal does not match products.csv checkpoint; ignoring it");
+            lastCheckoutId = checkouts.isEmpty() ? 0 : checkouts.lastKey();
+            for (String line : lines) {
+                if (line.startsWith("T,")) {
+                    lastCheckoutId = Math.max(lastCheckoutId, parseLong(line.substring(2)));
+                }
+            }
+            try {
+                reset(checkpointChecksum);
+            } catch (IOException e) {
+                SimpleLogger.logError("Error resetting catalog journal", e);
+            }
+            return 0;
+        }
+
+        baseCheckoutId = includedCheckoutId;
+        lastCheckoutId = includedCheckoutId;
+        Set<Long> taken = new HashSet<>();
+        long offset = 0;
+        for (String line : lines) {
+            long lineStart = offset;
+            offset += line.getBytes(StandardCharsets.UTF_8).length + 1;
+            if (line.trim().isEmpty() || line.startsWith("#") || lineStart < start) {
+                continue;
+            }
+            if (line.startsWith("T,")) {
+                long checkoutId = parseLong(line.substring(2));
+                // A checkout whose bill did not make it into the checkout journal never happened
+                if (checkoutId > includedCheckoutId && checkouts.containsKey(checkoutId) && taken.add(checkoutId)) {
+                    takeStock(catalog, checkouts.get(checkoutId));
+                    lastCheckoutId = Math.max(lastCheckoutId, checkoutId);
+                    entryCount++;
+                }
+            } else if (applyRecord(catalog, line)) {
+                entryCount++;
+            } else {
+                SimpleLogger.logWarning("Skipping unreadable catalog journal entry: " + line);
+            }
+        }
+
+        for (Map.Entry<Long, List<BilledItem>> checkout : checkouts.tailMap(includedCheckoutId, false).entrySet()) {
+            if (taken.add(checkout.getKey())) {
+                takeStock(catalog, checkout.getValue());
+                lastCheckoutId = Math.max(lastCheckoutId, checkout.getKey());
+                entryCount++;
+            }
+        }
+
+        return entryCount;
+    }
+
+    private static long parseLong(String text) {
+        try {
+            return Long.parseLong(text.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void takeStock(ProductCatalog catalog, List<BilledItem> items) {
+        for (BilledItem item : items) {
+            catalog.adjustQuantity(item.getId(), -item.getQuantity());
+        }
+    }
+
+    private boolean applyRecord(ProductCatalog catalog, String line) {
+        String[] parts = line.split(",");
+        try {
+            switch (parts[0]) {
+                case "A":
+                case "U":
+                    if (parts.length != 6) {
+                        return false;
+                    }
+                    catalog.add(new Product(parts[1], parts[2], parts[3],
+                            Money.parse(parts[4]), Integer.parseInt(parts[5])));
+                    return true;
+                case "D":
+                    if (parts.length != 2) {
+                        return false;
+                    }
+                    catalog.remove(parts[1]);
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Queues the record of an added product. The caller awaits the returned commit
+     * outside its own locks, so concurrent changes can share a force.
+     */
+    public DurableAppender.Commit submitAdd(Product product) throws IOException {
+        return submitMutation(encodeProduct("A", product));
+    }
+
+    public DurableAppender.Commit submitUpdate(Product product) throws IOException {
+        return submitMutation(encodeProduct("U", product));
+    }
+
+    public DurableAppender.Commit submitDelete(String id) throws IOException {
+        return submitMutation("D," + id);
+    }
+
+    /**
+     * Queues the mark that a checkout took its stock at this point, without waiting for the disk
+     */
+    public void submitCheckoutStock(long checkoutId) throws IOException {
+        submit(Collections.singletonList("T," + checkoutId));
+        entryCount++;
+        lastCheckoutId = checkoutId;
+    }
+
+    private String encodeProduct(String type, Product product) {
+        StringBuilder record = new StringBuilder(64);
+        record.append(type).append(',')
+                .append(product.getId()).append(',')
+                .append(product.getName()).append(',')
+                .append(product.getCategory()).append(',');
+        Money.appendTo(record, product.getPriceCents())
+                .append(',').append(product.getQuantity());
+        return record.toString();
+    }
+
+    private DurableAppender.Commit submitMutation(String record) throws IOException {
+        DurableAppender.Commit commit = submit(Collections.singletonList(record));
+        entryCount++;
+        return commit;
+    }
+
+    private DurableAppender.Commit submit(List<String> records) throws IOException {
+        StringBuilder content = new StringBuilder();
+        if (appender.size() == 0) {
+            content.append(header(baseChecksum, baseCheckoutId));
+        }
+        for (String record : records) {
+            content.append(record).append("\n");
+        }
+        return appender.submit(content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String header(long checkpointChecksum, long checkoutId) {
+        return BASE_PREFIX + checkpointChecksum + "," + checkoutId + "\n";
+    }
+
+    /**
+     * Gets the offset at which the next entry will be appended
+     */
+    public long size() throws IOException {
+        return appender.size();
+    }
+
+    /**
+     * Queues the record that a checkpoint with the given checksum holds every entry before an
+     * offset and the stock of the checkouts up to the given id. It must be on disk before that
+     * checkpoint replaces products.csv.
+     */
+    public DurableAppender.Commit submitCheckpoint(long offset, long checkpointChecksum, long checkoutId) throws IOException {
+        return submit(Collections.singletonList(CHECKPOINT_PREFIX + offset + "," + checkpointChecksum + "," + checkoutId));
+    }
+
+    /**
+     * Cuts the journal back to the entries from an offset on, once a checkpoint holding
+     * everything before it has been written. The given number of mutations were folded in.
+     */
+    public void compact(long offset, long checkpointChecksum, long checkoutId, int folded) throws IOException {
+        // Entries still queued belong in the file that is read
+        DurableAppender.release(journalFile);
+        byte[] bytes = Files.readAllBytes(journalFile);
+        StringBuilder content = new StringBuilder(64 + bytes.length - (int) offset);
+        content.append(header(checkpointChecksum, checkoutId));
+        for (String line : new String(bytes, (int) offset, bytes.length - (int) offset, StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                content.append(line).append("\n");
+            }
+        }
+        FileUtils.safeWriteFile(journalFile, content.toString().getBytes(StandardCharsets.UTF_8));
+        baseChecksum = checkpointChecksum;
+        baseCheckoutId = checkoutId;
+        entryCount -= folded;
+    }
+
+    /**
+     * Starts an empty journal on top of a new checkpoint
+     */
+    public void reset(long checkpointChecksum) throws IOException {
+        FileUtils.safeWriteFile(journalFile, header(checkpointChecksum, lastCheckoutId).getBytes(StandardCharsets.UTF_8));
+        baseChecksum = checkpointChecksum;
+        baseCheckoutId = lastCheckoutId;
+        entryCount = 0;
+    }
+
+    /**
+     * Gets the number of mutations recorded since the last checkpoint
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Gets the id of the latest checkout whose stock has been taken, or 0 if there is none
+     */
+    public long getLastCheckoutId() {
+        return lastCheckoutId;
+    }
+
+    /**
+     * Gets the id of the latest checkout whose stock the products.csv checkpoint includes
+     */
+    public long getCheckpointCheckoutId() {
+        return baseCheckoutId;
+    }
+}
@@ -0,0 +1,456 @@
+package controller;
+
+import model.CategoryIndex;
+import model.Money;
+import model.Product;
+import model.ProductCatalog;
+import util.CsvParser;
+import util.DurableAppender;
+import util.FileUtils;
+import util.SimpleLogger;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Process-wide product catalog shared by all controllers and views.
+ * The catalog is loaded from data/products.csv once; every change made through
+ * this service is recorded in an append-only journal and broadcast to registered
+ * listeners. A background checkpoint periodically folds the journal back into
+ * products.csv. Stock taken at checkout is reserved in memory and made durable by
+ * the checkout's bill in the checkout journal.
+ */
+public class CatalogService {
+    private static final String PRODUCTS_CSV = "data/products.csv";
+    private static final String JOURNAL_FILE = "data/products.journal";
+    private static final String SNAPSHOT_FILE = "data/products.bin";
+    private static final String CSV_HEADER = "id,name,category,price,quantity";
+    private static final long CHECKPOINT_INTERVAL_MINUTES = 5;
+    private static final int CHECKPOINT_ENTRY_THRESHOLD = 5000;
+    private static CatalogService instance;
+
+    private final ProductCatalog catalog;
+    private final CatalogJournal journal;
+    private final CatalogSnapshot snapshot;
+    private final CheckoutJournal checkoutJournal;
+    private final NavigableMap<Long, Map<String, Integer>> reservations;
+    private final NavigableSet<Long> unjournaled;
+    private final List<CatalogListener> listeners;
+    private final ScheduledExecutorService checkpointScheduler;
+    private final Object checkpointLock = new Object();
+    private boolean checkpointPending = false;
+
+    /**
+     * Receives a callback whenever the shared catalog changes
+     */
+    public interface CatalogListener {
+        void catalogChanged();
+    }
+
+    private CatalogService() {
+        this.catalog = new ProductCatalog();
+        this.journal = new CatalogJournal(Paths.get(JOURNAL_FILE));
+        this.snapshot = new CatalogSnapshot(Paths.get(SNAPSHOT_FILE), Paths.get(PRODUCTS_CSV));
+        this.checkoutJournal = CheckoutJournal.getInstance();
+        this.reservations = new TreeMap<>();
+        this.unjournaled = new TreeSet<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+        FileUtils.ensureDirectories();
+        loadFromDisk();
+
+        this.checkpointScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "catalog-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkpointScheduler.scheduleWithFixedDelay(this::runCheckpoint,
+                CHECKPOINT_INTERVAL_MINUTES, CHECKPOINT_INTERVAL_MINUTES, TimeUnit.MINUTES);
+
+        SimpleLogger.logInfo("CatalogService initialized with " + catalog.size() + " products");
+    }
+
+    /**
+     * Gets the shared catalog service, loading the catalog on first use
+     */
+    public static synchronized CatalogService getInstance() {
+        if (instance == null) {
+            instance = new CatalogService();
+        }
+        return instance;
+    }
+
+    /**
+     * Checkpoints pending journal entries and stops the background checkpoint, if the service was started
+     */
+    public static synchronized void shutdown() {
+        if (instance == null) {
+            return;
+        }
+        instance.checkpointScheduler.shutdown();
+        instance.checkpoint();
+        instance = null;
+    }
+
+    public void addListener(CatalogListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(CatalogListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Discards the in-memory catalog and re-reads it from disk
+     */
+    public void reload() {
+        // Not while a checkpoint is between copying the catalog and cutting back the journal
+        synchronized (checkpointLock) {
+            synchronized (this) {
+                loadFromDisk();
+            }
+        }
+        fireCatalogChanged();
+    }
+
+    private void loadFromDisk() {
+        Path file = Paths.get(PRODUCTS_CSV);
+        catalog.clear();
+
+        // Create file with header if it doesn't exist
+        if (!Files.exists(file)) {
+            try {
+                FileUtils.safeWriteTextFile(file, CSV_HEADER + "\n");
+                SimpleLogger.logInfo("Created products.csv with header");
+            } catch (IOException e) {
+                SimpleLogger.logError("Error creating products.csv", e);
+            }
+        }
+
+        // Prefer the binary snapshot; fall back to parsing the CSV and refresh the snapshot from it
+        long checkpointChecksum = snapshot.load(catalog);
+        if (checkpointChecksum < 0) {
+            checkpointChecksum = loadFromCsv(file);
+            snapshot.write(catalog.values(), checkpointChecksum);
+        }
+
+        int replayed = journal.replay(catalog, checkpointChecksum, checkoutJournal.getUnfoldedItems());
+        if (replayed > 0) {
+            SimpleLogger.logInfo("Replayed " + replayed + " catalog journal entries");
+        }
+        checkoutJournal.stockCheckpointed(journal.getCheckpointCheckoutId());
+
+        // Checkouts whose bills are still on their way to the checkout journal
+        for (long checkoutId : unjournaled) {
+            for (Map.Entry<String, Integer> entry : reservations.get(checkoutId).entrySet()) {
+                catalog.adjustQuantity(entry.getKey(), -entry.getValue());
+            }
+        }
+    }
+
+    private long loadFromCsv(Path file) {
+        CRC32 checkpointChecksum = new CRC32();
+        try {
+            CsvParser.parse(file, true, row -> {
+                if (row.getFieldCount() == 5) {
+                    try {
+                        String id = row.getString(0);
+                        String name = row.getString(1);
+                        String category = row.getString(2);
+                        Money price = Money.ofCents(row.getMinorUnits(3));
+                        int quantity = row.getInt(4);
+                        catalog.add(new Product(id, name, category, price, quantity));
+                    } catch (NumberFormatException e) {
+                        System.err.println("Error parsing product: " + row.getLine());
+                    }
+                }
+            }, checkpointChecksum);
+        } catch (IOException e) {
+            SimpleLogger.logError("Error reading products", e);
+        }
+        return checkpointChecksum.getValue();
+    }
+
+    private static long checksum(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    public synchronized List<Product> getAllProducts() {
+        return catalog.getAll();
+    }
+
+    public synchronized Product getProductById(String id) {
+        return catalog.get(id);
+    }
+
+    /**
+     * Finds up to limit products matching a type-ahead query on id, name or category
+     */
+    public synchronized List<Product> searchProducts(String query, int limit) {
+        return catalog.search(query, limit);
+    }
+
+    /**
+     * Finds up to limit products in stock matching a type-ahead query on id, name or category
+     */
+    public synchronized List<Product> searchProductsInStock(String query, int limit) {
+        return catalog.search(query, limit, product -> product.getQuantity() > 0);
+    }
+
+    /**
+     * Gets the products in a category, matched case-insensitively
+     */
+    public synchronized List<Product> getProductsByCategory(String category) {
+        return catalog.getByCategory(category);
+    }
+
+    /**
+     * Gets product count, units in stock and stock value for every category
+     */
+    public synchronized List<CategoryIndex.Facet> getCategoryFacets() {
+        return catalog.getCategoryFacets();
+    }
+
+    public synchronized int getProductCount() {
+        return catalog.size();
+    }
+
+    public void addProduct(Product product) {
+        DurableAppender.Commit write;
+        synchronized (this) {
+            try {
+                write = journal.submitAdd(product);
+            } catch (IOException e) {
+                throw journalFailure(e);
+            }
+            catalog.add(product);
+            checkpointIfJournalLarge();
+        }
+        awaitJournal(write);
+        fireCatalogChanged();
+    }
+
+    public void updateProduct(Product product) {
+        DurableAppender.Commit write;
+        synchronized (this) {
+            if (!catalog.contains(product.getId())) {
+                return;
+            }
+            try {
+                write = journal.submitUpdate(product);
+            } catch (IOException e) {
+                throw journalFailure(e);
+            }
+            catalog.update(product);
+            checkpointIfJournalLarge();
+        }
+        awaitJournal(write);
+        fireCatalogChanged();
+    }
+
+    public void deleteProduct(String id) {
+        DurableAppender.Commit write;
+        synchronized (this) {
+            if (!catalog.contains(id)) {
+                return;
+            }
+            try {
+                write = journal.submitDelete(id);
+            } catch (IOException e) {
+                throw journalFailure(e);
+            }
+            catalog.remove(id);
+            checkpointIfJournalLarge();
+        }
+        awaitJournal(write);
+        fireCatalogChanged();
+    }
+
+    /**
+     * Waits for a change applied under the monitor to reach the journal, outside the monitor so
+     * other changes can join the same write. If it does not, the catalog is re-read so it only
+     * holds what was saved.
+     */
+    private void awaitJournal(DurableAppender.Commit write) {
+        try {
+            write.await();
+        } catch (IOException e) {
+            RuntimeException failure = journalFailure(e);
+            reload();
+            throw failure;
+        }
+    }
+
+    /**
+     * Reserves the stock for a checkout in memory. Every line is checked before anything changes;
+     * if any product is unknown or short on stock, no quantity is modified. The reservation lasts
+     * until the checkout's bill is journaled ({@link #checkoutJournaled}) or the checkout is
+     * cancelled ({@link #cancelCheckoutStock}). Checkouts must reserve stock in id order.
+     */
+    public void reserveCheckoutStock(Map<String, Integer> quantitiesById, long checkoutId) {
+        synchronized (this) {
+            for (Map.Entry<String, Integer> entry : quantitiesById.entrySet()) {
+                Product product = catalog.get(entry.getKey());
+                if (product == null) {
+                    throw new IllegalArgumentException("Product not found: " + entry.getKey());
+                }
+                if (product.getQuantity() < entry.getValue()) {
+                    throw new IllegalArgumentException("Insufficient stock for product: " + entry.getKey());
+                }
+            }
+
+            try {
+                journal.submitCheckoutStock(checkoutId);
+            } catch (IOException e) {
+                throw journalFailure(e);
+            }
+            for (Map.Entry<String, Integer> entry : quantitiesById.entrySet()) {
+                catalog.adjustQuantity(entry.getKey(), -entry.getValue());
+            }
+            reservations.put(checkoutId, new LinkedHashMap<>(quantitiesById));
+            unjournaled.add(checkoutId);
+            checkpointIfJournalLarge();
+        }
+        fireCatalogChanged();
+    }
+
+    /**
+     * Notes that a checkout's bill is in the checkout journal, which now holds its stock
+     */
+    public synchronized void checkoutJournaled(long checkoutId) {
+        unjournaled.remove(checkoutId);
+    }
+
+    /**
+     * Puts back the stock reserved for a checkout whose bill could not be journaled
+     */
+    public void cancelCheckoutStock(long checkoutId) {
+        synchronized (this) {
+            unjournaled.remove(checkoutId);
+            Map<String, Integer> quantitiesById = reservations.remove(checkoutId);
+            if (quantitiesById == null) {
+                return;
+            }
+            for (Map.Entry<String, Integer> entry : quantitiesById.entrySet()) {
+                catalog.adjustQuantity(entry.getKey(), entry.getValue());
+            }
+        }
+        fireCatalogChanged();
+    }
+
+    private RuntimeException journalFailure(IOException e) {
+        SimpleLogger.logError("Error writing catalog journal", e);
+        return new RuntimeException("Failed to save products", e);
+    }
+
+    private void checkpointIfJournalLarge() {
+        if (journal.getEntryCount() >= CHECKPOINT_ENTRY_THRESHOLD && !checkpointPending) {
+            checkpointPending = true;
+            checkpointScheduler.execute(this::runCheckpoint);
+        }
+    }
+
+    private void runCheckpoint() {
+        try {
+            checkpoint();
+        } catch (RuntimeException e) {
+            SimpleLogger.logError("Catalog checkpoint failed", e);
+        }
+    }
+
+    /**
+     * Rewrites products.csv from the in-memory catalog and cuts the journal back to the changes
+     * made since. Only copying the catalog holds up other changes; the files are written after.
+     */
+    public void checkpoint() {
+        synchronized (checkpointLock) {
+            List<Product> products;
+            long checkoutId;
+            long journalOffset;
+            int folded;
+            synchronized (this) {
+                checkpointPending = false;
+                if (journal.getEntryCount() == 0) {
+                    return;
+                }
+                // Checkouts whose bills are not journaled yet could still be cancelled, so the
+                // checkpoint stops short of the first of them and leaves later ones to replay
+                checkoutId = unjournaled.isEmpty() ? journal.getLastCheckoutId() : unjournaled.first() - 1;
+                Map<String, Product> copies = new LinkedHashMap<>();
+                for (Product product : catalog.values()) {
+                    copies.put(product.getId(), new Product(product.getId(), product.getName(), product.getCategory(),
+                            product.getPrice(), product.getQuantity()));
+                }
+                for (Map<String, Integer> quantitiesById : reservations.tailMap(checkoutId, false).values()) {
+                    for (Map.Entry<String, Integer> entry : quantitiesById.entrySet()) {
+                        Product copy = copies.get(entry.getKey());
+                        if (copy != null) {
+                            copy.setQuantity(copy.getQuantity() + entry.getValue());
+                        }
+                    }
+                }
+                products = new ArrayList<>(copies.values());
+                try {
+                    journalOffset = journal.size();
+                } catch (IOException e) {
+                    throw checkpointFailure(e);
+                }
+                folded = journal.getEntryCount();
+            }
+
+            StringBuilder content = new StringBuilder(CSV_HEADER.length() + 1 + products.size() * 48);
+            content.append(CSV_HEADER).append("\n");
+            for (Product product : products) {
+                content.append(product.getId()).append(',')
+                        .append(product.getName()).append(',')
+                        .append(product.getCategory()).append(',');
+                Money.appendTo(content, product.getPriceCents())
+                        .append(',').append(product.getQuantity()).append('\n');
+            }
+            byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+            long checkpointChecksum = checksum(bytes);
+
+            try {
+                DurableAppender.Commit mark;
+                synchronized (this) {
+                    mark = journal.submitCheckpoint(journalOffset, checkpointChecksum, checkoutId);
+                }
+                // On disk before products.csv is replaced, so a crash in between still finds
+                // where the changes since the copy start
+                mark.await();
+                FileUtils.safeWriteFile(Paths.get(PRODUCTS_CSV), bytes);
+                snapshot.write(products, checkpointChecksum);
+                synchronized (this) {
+                    journal.compact(journalOffset, checkpointChecksum, checkoutId, folded);
+                    reservations.headMap(checkoutId, true).clear();
+                }
+                checkoutJournal.stockCheckpointed(checkoutId);
+                SimpleLogger.logInfo("Catalog checkpoint written (" + folded + " journal entries folded)");
+            } catch (IOException e) {
+                throw checkpointFailure(e);
+            }
+        }
+    }
+
+    private RuntimeException checkpointFailure(IOException e) {
+        SimpleLogger.logError("Error saving products CSV", e);
+        return new RuntimeException("Failed to save products", e);
+    }
+
+    private void fireCatalogChanged() {
+        for (CatalogListener listener : listeners) {
+            try {
+                listener.catalogChanged();
+            } catch (Exception e) {
+                SimpleLogger.logError("Catalog listener failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package controller;
+
+import model.Money;
+import model.Product;
+import model.ProductCatalog;
+import util.FileUtils;
+import util.SimpleLogger;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Collection;
+
+/**
+ * Binary copy of the products.csv checkpoint, used to load the catalog with a single bulk read.
+ *
+ * The header records the size, modification time and checksum of the CSV the snapshot was
+ * taken from. A snapshot whose CSV has since changed is stale and is not used.
+ * <pre>
+ *   int magic, int version, long csvSize, long csvModified, long csvChecksum, int count
+ *   count x (string id, string name, string category, long priceCents, int quantity)
+ * </pre>
+ * Strings are written as an unsigned short byte length followed by UTF-8 bytes.
+ */
+public class CatalogSnapshot {
+    private static final int MAGIC = 0x50434154; // "PCAT"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4;
+
+    private final Path snapshotFile;
+    private final Path csvFile;
+
+    public CatalogSnapshot(Path snapshotFile, Path csvFile) {
+        this.snapshotFile = snapshotFile;
+        this.csvFile = csvFile;
+    }
+
+    /**
+     * Loads the snapshot into the catalog if it exists and matches the current CSV.
+     * Returns the checksum of the CSV it was taken from, or -1 if the caller must read the CSV instead.
+     */
+    public long load(ProductCatalog catalog) {
+        if (!Files.exists(snapshotFile) || !Files.exists(csvFile)) {
+            return -1;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(snapshotFile));
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                SimpleLogger.logWarning("Ignoring unrecognised catalog snapshot: " + snapshotFile);
+                return -1;
+            }
+
+            long csvSize = buffer.getLong();
+            long csvModified = buffer.getLong();
+            long csvChecksum = buffer.getLong();
+            if (csvSize != Files.size(csvFile) || csvModified != Files.getLastModifiedTime(csvFile).toMillis()) {
+                SimpleLogger.logInfo("Catalog snapshot is stale; loading products.csv");
+                return -1;
+            }
+
+            int count = buffer.getInt();
+            catalog.clear();
+            for (int i = 0; i < count; i++) {
+                String id = readString(buffer);
+                String name = readString(buffer);
+                String category = readString(buffer);
+                Money price = Money.ofCents(buffer.getLong());
+                int quantity = buffer.getInt();
+                catalog.add(new Product(id, name, category, price, quantity));
+            }
+            return csvChecksum;
+        } catch (IOException | BufferUnderflowException e) {
+            SimpleLogger.logWarning("Could not read catalog snapshot, loading products.csv: " + e);
+            catalog.clear();
+            return -1;
+        }
+    }
+
+    /**
+     * Writes a snapshot of the products as they stand in the current CSV checkpoint
+     */
+    public void write(Collection<Product> products, long csvChecksum) {
+        try {
+            int size = HEADER_SIZE;
+            byte[][] strings = new byte[products.size() * 3][];
+            int s = 0;
+            for (Product product : products) {
+                strings[s] = utf8(product.getId());
+                strings[s + 1] = utf8(product.getName());
+                strings[s + 2] = utf8(product.getCategory());
+                size += 6 + strings[s].length + strings[s + 1].length + strings[s + 2].length + 8 + 4;
+                s += 3;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(Files.size(csvFile));
+            buffer.putLong(Files.getLastModifiedTime(csvFile).toMillis());
+            buffer.putLong(csvChecksum);
+            buffer.putInt(products.size());
+
+            s = 0;
+            for (Product product : products) {
+                writeString(buffer, strings[s++]);
+                writeString(buffer, strings[s++]);
+                writeString(buffer, strings[s++]);
+                buffer.putLong(product.getPriceCents());
+                buffer.putInt(product.getQuantity());
+            }
+
+            FileUtils.safeWriteFile(snapshotFile, buffer.array());
+        } catch (IOException e) {
+            // The snapshot is only an accelerator; the CSV stays authoritative
+            SimpleLogger.logError("Error writing catalog snapshot", e);
+        }
+    }
+
+    private static byte[] utf8(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Product field too long for snapshot: " + value.substring(0, 32) + "...");
+        }
+        return bytes;
+    }
+
+    private static void writeString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
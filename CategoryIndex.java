@@ -0,0 +1,126 @@
+package model;
+
+import java.util.*;
+
+/**
+ * Secondary index from product category to products, with running per-category totals.
+ * Categories are matched case-insensitively, independent of the default locale; a category keeps
+ * the spelling it was first seen with. Products without a category are listed as Uncategorized.
+ * Counts, units in stock and stock value are adjusted on every change instead of being recomputed.
+ */
+public class CategoryIndex {
+    private static final String UNCATEGORIZED = "Uncategorized";
+
+    private final Map<String, Facet> facetsByKey;
+
+    public CategoryIndex() {
+        this.facetsByKey = new HashMap<>();
+    }
+
+    /**
+     * Summary of one category
+     */
+    public static class Facet {
+        private final String name;
+        private final Set<String> productIds;
+        private int productCount;
+        private long totalQuantity;
+        private long stockValueCents;
+
+        private Facet(String name) {
+            this.name = name;
+            this.productIds = new LinkedHashSet<>();
+        }
+
+        private Facet(Facet other) {
+            this.name = other.name;
+            this.productIds = Collections.emptySet();
+            this.productCount = other.productCount;
+            this.totalQuantity = other.totalQuantity;
+            this.stockValueCents = other.stockValueCents;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getProductCount() {
+            return productCount;
+        }
+
+        public long getTotalQuantity() {
+            return totalQuantity;
+        }
+
+        public Money getStockValue() {
+            return Money.ofCents(stockValueCents);
+        }
+    }
+
+    private static String name(String category) {
+        return category == null || category.trim().isEmpty() ? UNCATEGORIZED : category.trim();
+    }
+
+    private static String key(String category) {
+        return name(category).toLowerCase(Locale.ROOT);
+    }
+
+    public void add(Product product) {
+        String key = key(product.getCategory());
+        Facet facet = facetsByKey.computeIfAbsent(key, k -> new Facet(name(product.getCategory())));
+        if (facet.productIds.add(product.getId())) {
+            facet.productCount++;
+            facet.totalQuantity += product.getQuantity();
+            facet.stockValueCents += product.getPriceCents() * product.getQuantity();
+        }
+    }
+
+    public void remove(Product product) {
+        String key = key(product.getCategory());
+        Facet facet = facetsByKey.get(key);
+        if (facet == null || !facet.productIds.remove(product.getId())) {
+            return;
+        }
+        facet.productCount--;
+        facet.totalQuantity -= product.getQuantity();
+        facet.stockValueCents -= product.getPriceCents() * product.getQuantity();
+        if (facet.productIds.isEmpty()) {
+            facetsByKey.remove(key);
+        }
+    }
+
+    /**
+     * Records a stock change for a product already in the index
+     */
+    public void adjustQuantity(Product product, int delta) {
+        Facet facet = facetsByKey.get(key(product.getCategory()));
+        if (facet != null && facet.productIds.contains(product.getId())) {
+            facet.totalQuantity += delta;
+            facet.stockValueCents += product.getPriceCents() * delta;
+        }
+    }
+
+    public void clear() {
+        facetsByKey.clear();
+    }
+
+    /**
+     * Gets the ids of products in a category, in the order they were indexed
+     */
+    public List<String> getProductIds(String category) {
+        Facet facet = facetsByKey.get(key(category));
+        return facet == null ? new ArrayList<>() : new ArrayList<>(facet.productIds);
+    }
+
+    /**
+     * Gets a snapshot of every category's totals, sorted by name
+     */
+    public List<Facet> getFacets() {
+        List<Facet> facets = new ArrayList<>(facetsByKey.size());
+        for (Facet facet : facetsByKey.values()) {
+            facets.add(new Facet(facet));
+        }
+        facets.sort(Comparator.comparing(f -> f.getName().toLowerCase(Locale.ROOT)));
+        return facets;
+    }
+}
@@ -0,0 +1,342 @@
+package controller;
+
+import model.Bill;
+import model.BilledItem;
+import model.Money;
+import util.DurableAppender;
+import util.FileUtils;
+import util.SimpleLogger;
+import util.TimestampCodec;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Write-ahead journal of checkouts. A checkout's whole bill is appended in one write before
+ * its archived bill and sale record are saved, and a commit marker after both are. Whatever a
+ * crash interrupts can then be finished from the journal on startup.
+ *
+ * The bill is also the durable record of the stock the checkout took, which the catalog
+ * reserves in memory beforehand (see {@link CatalogJournal}). Bills are therefore kept, complete
+ * or not, until the catalog reports a checkpoint that includes their stock.
+ *
+ * Each checkout has an id from an increasing sequence. The file looks like:
+ * <pre>
+ *   #next,id                                                       first id not yet used
+ *   B,id,yyyy-MM-dd HH:mm:ss,discount,total,net,itemCount,billId   bill of a checkout
+ *   I,id,productId,price,quantity,name                             one line of that bill
+ *   C,id                                                           checkout complete
+ *   X,id                                                           checkout abandoned
+ * </pre>
+ * A bill whose lines did not all reach the file was never acted on and is dropped. Once enough
+ * records have built up, the file is rewritten with only the bills still open or still needed
+ * for their stock.
+ *
+ * Records are queued under the journal's lock but waited on outside it, so records appended
+ * from different threads at the same time reach the disk in one forced write.
+ */
+public class CheckoutJournal {
+    private static final String JOURNAL_FILE = "data/checkout.journal";
+    private static final String NEXT_PREFIX = "#next,";
+    private static final int COMPACT_THRESHOLD = 1000;
+    private static CheckoutJournal instance;
+
+    private final Path file;
+    private final DurableAppender appender;
+    private final NavigableMap<Long, PendingCheckout> open;
+    private final NavigableMap<Long, Bill> unfolded;
+    private long nextId;
+    private int recordCount;
+    private int compactAt;
+
+    /**
+     * A checkout that was begun but neither completed nor abandoned
+     */
+    public static class PendingCheckout {
+        private final long id;
+        private final Bill bill;
+
+        private PendingCheckout(long id, Bill bill) {
+            this.id = id;
+            this.bill = bill;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public Bill getBill() {
+            return bill;
+        }
+    }
+
+    private CheckoutJournal(Path file) {
+        this.file = file;
+        this.appender = DurableAppender.forFile(file);
+        this.open = new TreeMap<>();
+        this.unfolded = new TreeMap<>();
+        this.nextId = 1;
+        read();
+        this.compactAt = recordCount + COMPACT_THRESHOLD;
+    }
+
+    public static synchronized CheckoutJournal getInstance() {
+        if (instance == null) {
+            instance = new CheckoutJournal(Paths.get(JOURNAL_FILE));
+        }
+        return instance;
+    }
+
+    /**
+     * Takes the id of the next checkout
+     */
+    public synchronized long nextId() {
+        return nextId++;
+    }
+
+    /**
+     * Records the bill of a checkout before anything is saved for it
+     */
+    public void begin(long id, Bill bill) throws IOException {
+        DurableAppender.Commit write;
+        synchronized (this) {
+            StringBuilder record = new StringBuilder(64 + bill.getItems().size() * 64);
+            if (appender.size() == 0) {
+                record.append(NEXT_PREFIX).append(nextId).append('\n');
+            }
+            appendBill(record, id, bill);
+
+            write = appender.submit(record.toString().getBytes(StandardCharsets.UTF_8));
+            // Registered before it is on disk, so the file is not compacted away under it
+            open.put(id, new PendingCheckout(id, bill));
+            unfolded.put(id, bill);
+            recordCount += 1 + bill.getItems().size();
+        }
+
+        try {
+            write.await();
+        } catch (IOException e) {
+            // Part of the bill may have reached the file; make sure it is never acted on
+            finish('X', id);
+            throw e;
+        }
+    }
+
+    private static void appendBill(StringBuilder record, long id, Bill bill) {
+        List<BilledItem> items = bill.getItems();
+        record.append("B,").append(id).append(',');
+        TimestampCodec.appendTo(record, bill.getTimestamp()).append(',');
+        Money.appendTo(record, bill.getDiscountBasisPoints()).append(',');
+        Money.appendTo(record, bill.getTotalCents()).append(',');
+        Money.appendTo(record, bill.getNetTotalCents()).append(',').append(items.size())
+                .append(',').append(bill.getId()).append('\n');
+        for (BilledItem item : items) {
+            record.append("I,").append(id).append(',').append(item.getId()).append(',');
+            Money.appendTo(record, item.getPriceCents()).append(',')
+                    .append(item.getQuantity()).append(',').append(item.getName()).append('\n');
+        }
+    }
+
+    /**
+     * Marks a checkout as fully applied
+     */
+    public void commit(long id) throws IOException {
+        finish('C', id);
+    }
+
+    /**
+     * Gets the checkouts that were begun but not finished, oldest first
+     */
+    public synchronized List<PendingCheckout> getIncomplete() {
+        return new ArrayList<>(open.values());
+    }
+
+    /**
+     * Gets the items of every journaled bill whose stock may not be in the catalog checkpoint
+     * yet, by checkout id
+     */
+    public synchronized NavigableMap<Long, List<BilledItem>> getUnfoldedItems() {
+        NavigableMap<Long, List<BilledItem>> items = new TreeMap<>();
+        for (Map.Entry<Long, Bill> entry : unfolded.entrySet()) {
+            items.put(entry.getKey(), entry.getValue().getItems());
+        }
+        return items;
+    }
+
+    /**
+     * Notes that the catalog checkpoint includes the stock of every checkout up to an id, so
+     * their bills are only kept while they are open
+     */
+    public synchronized void stockCheckpointed(long id) {
+        unfolded.headMap(id, true).clear();
+    }
+
+    private void finish(char marker, long id) throws IOException {
+        DurableAppender.Commit write;
+        synchronized (this) {
+            write = submitMarker(marker, id);
+            open.remove(id);
+            if (marker == 'X') {
+                unfolded.remove(id);
+            }
+            recordCount++;
+            if (recordCount >= compactAt) {
+                compact();
+            }
+        }
+        awaitMarker(write);
+    }
+
+    /**
+     * Rewrites the file with only the bills still open or still needed for their stock.
+     * The queued markers are written to the old file before it is replaced.
+     */
+    private void compact() throws IOException {
+        SortedSet<Long> kept = new TreeSet<>(open.keySet());
+        kept.addAll(unfolded.keySet());
+        StringBuilder content = new StringBuilder(32 + kept.size() * 256);
+        content.append(NEXT_PREFIX).append(nextId).append('\n');
+        int records = 0;
+        for (long id : kept) {
+            Bill bill = open.containsKey(id) ? open.get(id).getBill() : unfolded.get(id);
+            appendBill(content, id, bill);
+            records += 1 + bill.getItems().size();
+            if (!open.containsKey(id)) {
+                content.append("C,").append(id).append('\n');
+                records++;
+            }
+        }
+        FileUtils.safeWriteFile(file, content.toString().getBytes(StandardCharsets.UTF_8));
+        recordCount = records;
+        compactAt = records + COMPACT_THRESHOLD;
+    }
+
+    private void appendMarker(char marker, long id) {
+        awaitMarker(submitMarker(marker, id));
+    }
+
+    private DurableAppender.Commit submitMarker(char marker, long id) {
+        try {
+            return appender.submit((marker + "," + id + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            SimpleLogger.logError("Error writing checkout journal " + file, e);
+            return null;
+        }
+    }
+
+    private void awaitMarker(DurableAppender.Commit write) {
+        if (write == null) {
+            return;
+        }
+        try {
+            write.await();
+        } catch (IOException e) {
+            SimpleLogger.logError("Error writing checkout journal " + file, e);
+        }
+    }
+
+    private void read() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        String content;
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            int end = bytes.length;
+            while (end > 0 && bytes[end - 1] != '\n') {
+                end--;
+            }
+            if (end < bytes.length) {
+                // A line without its newline was cut short by a crash; cut it off so the next
+                // append starts on a fresh line
+                SimpleLogger.logWarning("Discarding incomplete last line of checkout journal " + file);
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(end);
+                }
+            }
+            content = new String(bytes, 0, end, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            SimpleLogger.logError("Error reading checkout journal " + file, e);
+            return;
+        }
+
+        String[] lines = content.split("\n", -1);
+        Map<Long, Integer> expectedItems = new HashMap<>();
+        Map<Long, List<BilledItem>> itemsById = new HashMap<>();
+        Map<Long, String[]> billsById = new LinkedHashMap<>();
+        Set<Long> completed = new HashSet<>();
+        for (int i = 0; i < lines.length - 1; i++) {
+            String line = lines[i];
+            if (line.isEmpty()) {
+                continue;
+            }
+            try {
+                if (line.startsWith(NEXT_PREFIX)) {
+                    nextId = Math.max(nextId, Long.parseLong(line.substring(NEXT_PREFIX.length()).trim()));
+                    continue;
+                }
+                String[] parts = line.split(",", 6);
+                long id = Long.parseLong(parts[1]);
+                nextId = Math.max(nextId, id + 1);
+                recordCount++;
+                switch (parts[0]) {
+                    case "B":
+                        String[] header = line.split(",");
+                        billsById.put(id, header);
+                        expectedItems.put(id, Integer.parseInt(header[6]));
+                        itemsById.put(id, new ArrayList<>());
+                        break;
+                    case "I":
+                        List<BilledItem> items = itemsById.get(id);
+                        if (items != null) {
+                            items.add(new BilledItem(parts[2], parts[5], Money.parse(parts[3]), Integer.parseInt(parts[4])));
+                        }
+                        break;
+                    case "C":
+                        completed.add(id);
+                        break;
+                    case "X":
+                        billsById.remove(id);
+                        break;
+                    default:
+                        SimpleLogger.logWarning("Skipping unreadable checkout journal entry: " + line);
+                }
+            } catch (RuntimeException e) {
+                SimpleLogger.logWarning("Skipping unreadable checkout journal entry: " + line);
+            }
+        }
+
+        for (Map.Entry<Long, String[]> entry : billsById.entrySet()) {
+            long id = entry.getKey();
+            String[] bill = entry.getValue();
+            List<BilledItem> items = itemsById.get(id);
+            boolean done = completed.contains(id);
+            if (items.size() != expectedItems.get(id)) {
+                SimpleLogger.logWarning("Dropping checkout " + id + " whose bill was not completely journaled");
+                if (!done) {
+                    appendMarker('X', id);
+                }
+                continue;
+            }
+            try {
+                LocalDateTime timestamp = TimestampCodec.parse(bill[2]);
+                // Bills journaled before bills were numbered have no number
+                long billId = bill.length > 7 ? Long.parseLong(bill[7]) : 0;
+                Bill parsed = new Bill(billId, timestamp, items, Money.parseMinorUnits(bill[3]),
+                        Money.parseMinorUnits(bill[4]), Money.parseMinorUnits(bill[5]));
+                unfolded.put(id, parsed);
+                if (!done) {
+                    open.put(id, new PendingCheckout(id, parsed));
+                }
+            } catch (RuntimeException e) {
+                SimpleLogger.logWarning("Dropping checkout " + id + " whose bill could not be read: " + e);
+                if (!done) {
+                    appendMarker('X', id);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package controller;
+
+import model.Bill;
+import util.SimpleLogger;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Saves finished bills on a single background thread, so the cashier never waits on the disk.
+ *
+ * Bills are written strictly in the order they were handed over, each one completely (the bill,
+ * then the sale record) before the next starts. On shutdown every bill already handed over is
+ * still written before the application exits.
+ */
+public class CheckoutWriter {
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 60;
+    private static CheckoutWriter instance;
+
+    private final ExecutorService executor;
+    private final AtomicInteger pending;
+
+    /**
+     * Receives the outcome of each bill, on the writer thread
+     */
+    public interface CheckoutListener {
+        void billSaved(Bill bill, String billId);
+
+        void billFailed(Bill bill, Exception error);
+    }
+
+    private CheckoutWriter() {
+        this.pending = new AtomicInteger();
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "checkout-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized CheckoutWriter getInstance() {
+        if (instance == null) {
+            instance = new CheckoutWriter();
+        }
+        return instance;
+    }
+
+    /**
+     * Writes every bill still queued and stops the writer thread, if the writer was started
+     */
+    public static synchronized void shutdown() {
+        if (instance == null) {
+            return;
+        }
+        instance.executor.shutdown();
+        try {
+            if (!instance.executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                SimpleLogger.logWarning(instance.pending.get() + " bills were still being saved at shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        instance = null;
+    }
+
+    /**
+     * Queues a bill to be saved by the given task, which returns the bill's id
+     */
+    public void submit(Bill bill, Callable<String> task, CheckoutListener listener) {
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            String billId;
+            try {
+                billId = task.call();
+            } catch (Exception e) {
+                // Log the whole bill so it can be re-entered by hand
+                SimpleLogger.logError("Failed to save " + bill, e);
+                pending.decrementAndGet();
+                listener.billFailed(bill, e);
+                return;
+            }
+            pending.decrementAndGet();
+            listener.billSaved(bill, billId);
+        });
+    }
+
+    /**
+     * Gets the number of bills handed over but not yet saved
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+}
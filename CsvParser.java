@@ -0,0 +1,459 @@
+package util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.zip.Checksum;
+
+/**
+ * Allocation-light parser for the application's comma separated data files.
+ *
+ * The file is memory-mapped in large windows and each line is tokenized in place: a row
+ * only records where its fields start and end, and numbers and timestamps are decoded
+ * straight from the mapped bytes. Strings are only created for fields the caller asks for.
+ * Fields are trimmed of surrounding whitespace; quoting is not supported, matching the
+ * files this application writes. Blank lines are skipped.
+ */
+public class CsvParser {
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final int MAX_FIELDS = 32;
+    private static final long PARALLEL_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Receives each parsed row. The row is reused and only valid during the callback.
+     */
+    public interface RowHandler {
+        void onRow(Row row);
+    }
+
+    /**
+     * Parses a file, calling the handler for every non-blank line.
+     *
+     * @param skipHeader whether the first line is a header and should not be passed on
+     * @param checksum   optional checksum updated with every byte of the file, or null
+     * @return the number of bytes read
+     */
+    public static long parse(Path file, boolean skipHeader, RowHandler handler, Checksum checksum) throws IOException {
+        return scan(file, 0, Long.MAX_VALUE, skipHeader, true, handler, checksum);
+    }
+
+    /**
+     * Parses the complete lines of a file starting at a byte offset, for following a file that is
+     * still being appended to. A final line without a newline is left for the next call.
+     *
+     * @param start      byte offset of the first line to read; must be the start of a line
+     * @param skipHeader whether the line at the start offset is a header and should not be passed on
+     * @return the offset just past the last line read, to pass as the start of the next call
+     */
+    public static long parseFrom(Path file, long start, boolean skipHeader, RowHandler handler) throws IOException {
+        return scan(file, start, Long.MAX_VALUE, skipHeader, false, handler, null);
+    }
+
+    /**
+     * Parses the complete lines between two byte offsets, both of which must be line starts.
+     * An end offset past the end of the file reads to the end of the file.
+     *
+     * @param skipHeader whether the line at the start offset is a header and should not be passed on
+     */
+    public static long parseRange(Path file, long start, long end, boolean skipHeader, RowHandler handler) throws IOException {
+        return scan(file, start, end, skipHeader, false, handler, null);
+    }
+
+    /**
+     * Parses a file in parallel. The file is split into chunks of about PARALLEL_CHUNK_SIZE bytes
+     * that each end on a line boundary, and the chunks are parsed on the common fork/join pool.
+     * Each chunk's rows go to its own result object, created by the factory; the results are
+     * returned in file order, so rows that were in order within and across chunks stay in order.
+     * Small files are parsed as a single chunk on the calling thread.
+     *
+     * @param skipHeader whether the first line is a header and should not be passed on
+     */
+    public static <T> List<T> parseParallel(Path file, boolean skipHeader, Supplier<T> chunkFactory,
+                                            BiConsumer<T, Row> handler) throws IOException {
+        return parseParallel(file, Long.MAX_VALUE, skipHeader, chunkFactory, handler);
+    }
+
+    /**
+     * Parses the first length bytes of a file in parallel, as {@link #parseParallel(Path, boolean, Supplier, BiConsumer)}
+     * does the whole file. A length past the end of the file reads to the end of the file.
+     */
+    public static <T> List<T> parseParallel(Path file, long length, boolean skipHeader, Supplier<T> chunkFactory,
+                                            BiConsumer<T, Row> handler) throws IOException {
+        long[] bounds = chunkBoundaries(file, length, PARALLEL_CHUNK_SIZE);
+        int chunkCount = bounds.length - 1;
+        List<T> results = new ArrayList<>(chunkCount);
+        List<Callable<Void>> tasks = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            T result = chunkFactory.get();
+            results.add(result);
+            long start = bounds[i];
+            long end = bounds[i + 1];
+            boolean first = i == 0;
+            boolean last = i == chunkCount - 1;
+            tasks.add(() -> {
+                scan(file, start, end, skipHeader && first, last, row -> handler.accept(result, row), null);
+                return null;
+            });
+        }
+
+        if (tasks.size() == 1) {
+            try {
+                tasks.get(0).call();
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            return results;
+        }
+
+        for (Future<Void> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while parsing " + file, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Failed to parse " + file, e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Splits the first length bytes of a file into ranges of roughly the given size, each
+     * starting at the beginning of a line. Returns the range boundaries, from 0 to the length
+     * or the file size, whichever is smaller.
+     */
+    private static long[] chunkBoundaries(Path file, long length, long chunkSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = Math.min(channel.size(), length);
+            List<Long> bounds = new ArrayList<>();
+            bounds.add(0L);
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            long position = chunkSize;
+            while (position < size) {
+                // Move forward to just past the next newline
+                long boundary = -1;
+                long searchFrom = position;
+                while (boundary < 0 && searchFrom < size) {
+                    buffer.clear();
+                    int read = channel.read(buffer, searchFrom);
+                    if (read <= 0) {
+                        break;
+                    }
+                    for (int i = 0; i < read; i++) {
+                        if (buffer.get(i) == '\n') {
+                            boundary = searchFrom + i + 1;
+                            break;
+                        }
+                    }
+                    searchFrom += read;
+                }
+                if (boundary < 0 || boundary >= size) {
+                    break;
+                }
+                bounds.add(boundary);
+                position = boundary + chunkSize;
+            }
+            bounds.add(size);
+
+            long[] result = new long[bounds.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = bounds.get(i);
+            }
+            return result;
+        }
+    }
+
+    private static long scan(Path file, long start, long end, boolean skipHeader, boolean readUnterminated,
+                             RowHandler handler, Checksum checksum) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = Math.min(channel.size(), end);
+            long windowStart = start;
+            boolean headerPending = skipHeader;
+            Row row = new Row();
+
+            while (windowStart < size) {
+                int windowLength = (int) Math.min(WINDOW_SIZE, size - windowStart);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+                boolean lastWindow = windowStart + windowLength == size;
+
+                int lineStart = 0;
+                int consumed = 0;
+                for (int i = 0; i < windowLength; i++) {
+                    if (buffer.get(i) == '\n') {
+                        headerPending = emit(row, buffer, windowStart, lineStart, i, headerPending, handler);
+                        lineStart = i + 1;
+                        consumed = lineStart;
+                    }
+                }
+                if (lastWindow && lineStart < windowLength) {
+                    if (!readUnterminated) {
+                        return windowStart + consumed;
+                    }
+                    // Final line without a trailing newline
+                    emit(row, buffer, windowStart, lineStart, windowLength, headerPending, handler);
+                    consumed = windowLength;
+                }
+                if (consumed == 0) {
+                    throw new IOException("Line longer than " + WINDOW_SIZE + " bytes in " + file);
+                }
+
+                if (checksum != null) {
+                    buffer.limit(consumed);
+                    checksum.update(buffer);
+                }
+                windowStart += consumed;
+            }
+            return windowStart;
+        }
+    }
+
+    private static boolean emit(Row row, MappedByteBuffer buffer, long windowStart, int start, int end,
+                                boolean headerPending, RowHandler handler) {
+        if (headerPending) {
+            return false;
+        }
+        if (row.reset(buffer, windowStart, start, end)) {
+            handler.onRow(row);
+        }
+        return false;
+    }
+
+    /**
+     * A single tokenized line. Field accessors decode directly from the underlying bytes.
+     */
+    public static class Row {
+        private MappedByteBuffer buffer;
+        private long windowStart;
+        private int lineStart;
+        private int lineEnd;
+        private int fieldCount;
+        private final int[] fieldStarts = new int[MAX_FIELDS];
+        private final int[] fieldEnds = new int[MAX_FIELDS];
+        private byte[] scratch = new byte[256];
+
+        private boolean reset(MappedByteBuffer buffer, long windowStart, int start, int end) {
+            this.buffer = buffer;
+            this.windowStart = windowStart;
+            // Drop a trailing carriage return
+            if (end > start && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+            this.lineStart = start;
+            this.lineEnd = end;
+            this.fieldCount = 0;
+
+            int fieldStart = start;
+            for (int i = start; i <= end; i++) {
+                if (i == end || buffer.get(i) == ',') {
+                    if (fieldCount < MAX_FIELDS) {
+                        int s = fieldStart;
+                        int e = i;
+                        while (s < e && isWhitespace(buffer.get(s))) {
+                            s++;
+                        }
+                        while (e > s && isWhitespace(buffer.get(e - 1))) {
+                            e--;
+                        }
+                        fieldStarts[fieldCount] = s;
+                        fieldEnds[fieldCount] = e;
+                    }
+                    fieldCount++;
+                    fieldStart = i + 1;
+                }
+            }
+
+            // A line made only of whitespace is treated as blank
+            return !(fieldCount == 1 && fieldStarts[0] == fieldEnds[0]);
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+
+        /**
+         * Gets the number of comma separated fields on the line
+         */
+        public int getFieldCount() {
+            return fieldCount;
+        }
+
+        public String getString(int field) {
+            checkField(field);
+            return decode(fieldStarts[field], fieldEnds[field]);
+        }
+
+        /**
+         * Gets the byte offset of the start of the line within the file
+         */
+        public long getOffset() {
+            return windowStart + lineStart;
+        }
+
+        /**
+         * Gets the full text of the line, for error messages
+         */
+        public String getLine() {
+            return decode(lineStart, lineEnd);
+        }
+
+        private String decode(int start, int end) {
+            int length = end - start;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(start, scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        public int getInt(int field) {
+            long value = getLong(field);
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                throw new NumberFormatException("Value out of range: " + getString(field));
+            }
+            return (int) value;
+        }
+
+        public long getLong(int field) {
+            checkField(field);
+            int i = fieldStarts[field];
+            int end = fieldEnds[field];
+            boolean negative = false;
+            if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negative = buffer.get(i) == '-';
+                i++;
+            }
+            if (i == end || end - i > 18) {
+                throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+            }
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+                }
+                value = value * 10 + digit;
+            }
+            return negative ? -value : value;
+        }
+
+        /**
+         * Parses a plain decimal amount such as 40.00 into minor units (4000), following the
+         * same rules as Money.parseMinorUnits without creating a string
+         */
+        public long getMinorUnits(int field) {
+            checkField(field);
+            int i = fieldStarts[field];
+            int end = fieldEnds[field];
+            boolean negative = false;
+            if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negative = buffer.get(i) == '-';
+                i++;
+            }
+
+            long units = 0;
+            int digits = 0;
+            int decimals = -1;
+            boolean roundUp = false;
+            for (; i < end; i++) {
+                byte b = buffer.get(i);
+                if (b == '.' && decimals < 0) {
+                    decimals = 0;
+                    continue;
+                }
+                int digit = b - '0';
+                if (digit < 0 || digit > 9 || digits >= 17) {
+                    throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+                }
+                digits++;
+                if (decimals < 2) {
+                    units = units * 10 + digit;
+                    if (decimals >= 0) {
+                        decimals++;
+                    }
+                } else if (decimals == 2) {
+                    roundUp = digit >= 5;
+                    decimals++;
+                }
+            }
+            if (digits == 0) {
+                throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+            }
+
+            for (int d = Math.max(decimals, 0); d < 2; d++) {
+                units *= 10;
+            }
+            if (roundUp) {
+                units++;
+            }
+            return negative ? -units : units;
+        }
+
+        /**
+         * Parses a timestamp in the fixed yyyy-MM-dd HH:mm:ss layout
+         */
+        public LocalDateTime getDateTime(int field) {
+            return TimestampCodec.toLocalDateTime(getEpochSecond(field));
+        }
+
+        /**
+         * Parses a timestamp in the fixed yyyy-MM-dd HH:mm:ss layout into local epoch seconds,
+         * without creating any objects
+         */
+        public long getEpochSecond(int field) {
+            checkField(field);
+            int s = fieldStarts[field];
+            if (fieldEnds[field] - s != TimestampCodec.LENGTH
+                    || buffer.get(s + 4) != '-' || buffer.get(s + 7) != '-' || buffer.get(s + 10) != ' '
+                    || buffer.get(s + 13) != ':' || buffer.get(s + 16) != ':') {
+                throw new DateTimeParseException("Text '" + getString(field) + "' could not be parsed",
+                        getString(field), 0);
+            }
+            return TimestampCodec.toEpochSecond(
+                    digits(field, s, 4),
+                    digits(field, s + 5, 2),
+                    digits(field, s + 8, 2),
+                    digits(field, s + 11, 2),
+                    digits(field, s + 14, 2),
+                    digits(field, s + 17, 2));
+        }
+
+        private int digits(int field, int start, int count) {
+            int value = 0;
+            for (int i = start; i < start + count; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new DateTimeParseException("Text '" + getString(field) + "' could not be parsed",
+                            getString(field), i - fieldStarts[field]);
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        private void checkField(int field) {
+            if (field < 0 || field >= Math.min(fieldCount, MAX_FIELDS)) {
+                throw new IndexOutOfBoundsException("Field " + field + " not present on line: " + getLine());
+            }
+        }
+    }
+}
@@ -2,8 +2,21 @@ package view;
 
 import javax.swing.*;
 import java.awt.*;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import controller.ProductController;
+import controller.SalesController;
+import model.Product;
+import model.ProductSales;
+import model.SalesSummary;
 
 public class DashboardView extends JFrame {
+    private static final int TREND_MONTHS = 6;
+    private static final int TOP_SELLERS = 5;
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("MMM yyyy");
+
     private JButton manageProductsButton;
     private JButton billingButton;
     private JButton viewSalesButton;
@@ -90,6 +103,8 @@ public class DashboardView extends JFrame {
         contentPanel.add(settingsButton, gbc);
 
         add(contentPanel, BorderLayout.CENTER);
+        add(createMonthlyTrendPanel(), BorderLayout.EAST);
+        add(createTopSellersPanel(), BorderLayout.WEST);
 
         // Logout Button at bottom
         JPanel logoutPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
@@ -97,6 +112,47 @@ public class DashboardView extends JFrame {
         add(logoutPanel, BorderLayout.SOUTH);
     }
 
+    /**
+     * Builds the monthly sales trend from the stored rollups, so it needs no scan of the sales
+     */
+    private JPanel createMonthlyTrendPanel() {
+        JPanel trendPanel = new JPanel(new GridLayout(TREND_MONTHS + 1, 1, 5, 5));
+        trendPanel.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createEmptyBorder(20, 10, 20, 20),
+                BorderFactory.createTitledBorder("Monthly Sales")));
+
+        Map<YearMonth, SalesSummary> months = new SalesController().getMonthlySummaries(TREND_MONTHS);
+        for (Map.Entry<YearMonth, SalesSummary> entry : months.entrySet()) {
+            SalesSummary summary = entry.getValue();
+            trendPanel.add(new JLabel(String.format("%s:  %d sales,  ₹%s",
+                    entry.getKey().format(MONTH_FORMATTER), summary.getCount(), summary.getNet())));
+        }
+        return trendPanel;
+    }
+
+    /**
+     * Lists this month's best-selling products from the line-item totals
+     */
+    private JPanel createTopSellersPanel() {
+        JPanel sellersPanel = new JPanel(new GridLayout(TOP_SELLERS + 1, 1, 5, 5));
+        sellersPanel.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createEmptyBorder(20, 20, 20, 10),
+                BorderFactory.createTitledBorder("Top Sellers This Month")));
+
+        ProductController productController = new ProductController();
+        List<ProductSales> topSellers = new SalesController().getTopSellers(1, TOP_SELLERS);
+        if (topSellers.isEmpty()) {
+            sellersPanel.add(new JLabel("No sales yet"));
+        }
+        for (ProductSales product : topSellers) {
+            Product catalogProduct = productController.getProductById(product.getProductId());
+            String name = catalogProduct != null ? catalogProduct.getName() : product.getProductId();
+            sellersPanel.add(new JLabel(String.format("%s:  %d sold,  ₹%s",
+                    name, product.getUnits(), product.getRevenue())));
+        }
+        return sellersPanel;
+    }
+
     private void attachListeners() {
         manageProductsButton.addActionListener(e -> openProductView());
         billingButton.addActionListener(e -> openBillingView());
@@ -0,0 +1,288 @@
+package util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Durable appends to a log file through one long-lived channel, with group commit.
+ *
+ * An append is queued, then its caller waits until it is on disk. The first waiting caller
+ * writes everything queued so far in one write and forces it to disk once; appends queued
+ * meanwhile go out together in the next batch. So under load from many threads the cost
+ * of a force is shared by every append in a batch, and a lone append is written at once.
+ * When the previous batch held more than one append, the writer waits up to a millisecond
+ * for as many appends to queue up again before writing.
+ *
+ * If the file is replaced or changed by other means between appends, the channel is
+ * reopened on the new file.
+ */
+public final class DurableAppender {
+    private static final long MAX_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(1000);
+    private static final Map<Path, DurableAppender> APPENDERS = new HashMap<>();
+
+    private final Path file;
+    private final ReentrantLock lock;
+    private final Condition changed;
+    private FileChannel channel;
+    private Object fileKey;
+    private long size;
+    private List<Commit> queue;
+    private boolean flushing;
+    private int lastBatchSize;
+
+    /**
+     * One queued append; await it to know it is on disk
+     */
+    public static final class Commit {
+        private final DurableAppender appender;
+        private final ByteBuffer data;
+        private final long position;
+        private boolean done;
+        private IOException error;
+
+        private Commit(DurableAppender appender, ByteBuffer data, long position) {
+            this.appender = appender;
+            this.data = data;
+            this.position = position;
+        }
+
+        /**
+         * Gets the offset in the file at which this append is written
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * Waits until the append is on disk, writing it (and whatever else is queued) if no one else is
+         */
+        public void await() throws IOException {
+            appender.await(this);
+        }
+    }
+
+    private DurableAppender(Path file) {
+        this.file = file;
+        this.lock = new ReentrantLock();
+        this.changed = lock.newCondition();
+        this.queue = new ArrayList<>();
+    }
+
+    /**
+     * Gets the shared appender for a file
+     */
+    public static DurableAppender forFile(Path file) {
+        Path key = file.toAbsolutePath().normalize();
+        synchronized (APPENDERS) {
+            return APPENDERS.computeIfAbsent(key, DurableAppender::new);
+        }
+    }
+
+    /**
+     * Closes the channel of a file's appender, if it has one, before the file is replaced or
+     * deleted. The next append opens the file again.
+     */
+    public static void release(Path file) {
+        DurableAppender appender;
+        synchronized (APPENDERS) {
+            appender = APPENDERS.get(file.toAbsolutePath().normalize());
+        }
+        if (appender != null) {
+            appender.closeWhenIdle();
+        }
+    }
+
+    /**
+     * Appends data and waits until it is on disk
+     */
+    public void append(byte[] data) throws IOException {
+        submit(data).await();
+    }
+
+    /**
+     * Queues data to be appended and returns at once; the data is on disk once the commit is awaited
+     */
+    public Commit submit(byte[] data) throws IOException {
+        lock.lock();
+        try {
+            openIfNeeded();
+            Commit commit = new Commit(this, ByteBuffer.wrap(data), size);
+            size += data.length;
+            queue.add(commit);
+            changed.signalAll();
+            return commit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the length of the file, counting appends that are queued but not yet written
+     */
+    public long size() throws IOException {
+        lock.lock();
+        try {
+            if (channel != null && (flushing || !queue.isEmpty() || !isReplaced())) {
+                return size;
+            }
+            closeChannel();
+            return Files.exists(file) ? Files.size(file) : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void await(Commit commit) throws IOException {
+        lock.lock();
+        try {
+            while (!commit.done) {
+                if (flushing) {
+                    changed.awaitUninterruptibly();
+                    continue;
+                }
+                flushing = true;
+                try {
+                    writeBatch();
+                } finally {
+                    flushing = false;
+                    changed.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (commit.error != null) {
+            throw new IOException("Failed to append to " + file, commit.error);
+        }
+    }
+
+    /**
+     * Writes and forces everything queued. Called holding the lock, which is released during the IO.
+     */
+    private void writeBatch() {
+        if (lastBatchSize > 1) {
+            // Other threads have been appending; give them a moment to join this batch
+            long remaining = MAX_WAIT_NANOS;
+            while (queue.size() < lastBatchSize && remaining > 0) {
+                try {
+                    remaining = changed.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        if (queue.isEmpty()) {
+            return;
+        }
+        List<Commit> batch = queue;
+        queue = new ArrayList<>();
+        lastBatchSize = batch.size();
+        FileChannel target = channel;
+        IOException error = null;
+
+        lock.unlock();
+        try {
+            ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = batch.get(i).data;
+            }
+            while (buffers.length > 0 && buffers[buffers.length - 1].hasRemaining()) {
+                target.write(buffers);
+            }
+            target.force(false);
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            lock.lock();
+        }
+
+        for (Commit commit : batch) {
+            commit.error = error;
+            commit.done = true;
+        }
+        if (error != null) {
+            // Appends queued meanwhile were placed after this batch, so they fail with it
+            for (Commit commit : queue) {
+                commit.error = error;
+                commit.done = true;
+            }
+            queue = new ArrayList<>();
+            lastBatchSize = 0;
+            // Start again from whatever actually reached the file
+            closeChannel();
+        }
+    }
+
+    private void openIfNeeded() throws IOException {
+        if (channel != null && (flushing || !queue.isEmpty() || !isReplaced())) {
+            return;
+        }
+        closeChannel();
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        size = channel.size();
+        fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    }
+
+    /**
+     * Checks whether the file on disk is no longer the one the channel has open, or was
+     * changed without going through this appender
+     */
+    private boolean isReplaced() {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.size() != size || !Objects.equals(attributes.fileKey(), fileKey);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private void closeWhenIdle() {
+        lock.lock();
+        try {
+            while (flushing || !queue.isEmpty()) {
+                if (!flushing) {
+                    // Queued appends that no one is waiting on yet still belong in the old file
+                    flushing = true;
+                    try {
+                        writeBatch();
+                    } finally {
+                        flushing = false;
+                        changed.signalAll();
+                    }
+                } else {
+                    changed.awaitUninterruptibly();
+                }
+            }
+            closeChannel();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing is left unwritten on it
+        }
+        channel = null;
+        fileKey = null;
+    }
+}
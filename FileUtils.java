@@ -1,12 +1,12 @@
 package util;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 public class FileUtils {
-    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
     
     /**
      * Ensures all required directories exist
@@ -27,6 +27,27 @@ public class FileUtils {
      * Safely writes text content to a file using atomic write (write to temp file then move)
      */
     public static void safeWriteTextFile(Path file, String content) throws IOException {
+        safeWriteFile(file, content.getBytes());
+    }
+    
+    /**
+     * Safely writes binary content to a file using atomic write (write to temp file then move).
+     * The content is forced to disk before the move and the move itself after it, so once this
+     * returns the file survives a crash with either its old or its new content.
+     */
+    public static void safeWriteFile(Path file, byte[] content) throws IOException {
+        replaceFile(file, content, true);
+    }
+    
+    /**
+     * Writes a file that is checked and rebuilt from other data when it is found stale or
+     * missing, atomically but without waiting for the disk
+     */
+    public static void writeDerivedTextFile(Path file, String content) throws IOException {
+        replaceFile(file, content.getBytes(), false);
+    }
+    
+    private static void replaceFile(Path file, byte[] content, boolean durable) throws IOException {
         // Create parent directories if they don't exist
         Files.createDirectories(file.getParent());
         
@@ -34,10 +55,24 @@ public class FileUtils {
         Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
         
         try {
-            Files.write(tempFile, content.getBytes(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (durable) {
+                    channel.force(true);
+                }
+            }
             
-            // Atomically move temp file to final location
-            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            // An appender still holding the old file would keep writing to it after the move
+            DurableAppender.release(file);
+            
+            moveReplacing(tempFile, file);
+            if (durable) {
+                forceDirectory(file.toAbsolutePath().getParent());
+            }
         } catch (IOException e) {
             // Clean up temp file if it exists
             try {
@@ -49,11 +84,33 @@ public class FileUtils {
         }
     }
     
+    /**
+     * Moves a finished file over the file it replaces, atomically where the file system allows
+     */
+    public static void moveReplacing(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * Forces a directory's entries to disk, so a file just moved into it stays there
+     */
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not every platform can open a directory; the move is still atomic there
+        }
+    }
+    
     /**
      * Generates a timestamped filename with the given prefix and extension
      */
     public static String timestampedFilename(String prefix, String extension) {
-        String timestamp = LocalDateTime.now().format(TIMESTAMP_FORMATTER);
+        String timestamp = TimestampCodec.appendFileStamp(new StringBuilder(TimestampCodec.LENGTH), LocalDateTime.now()).toString();
         return String.format("%s_%s.%s", prefix, timestamp, extension);
     }
     
@@ -77,13 +134,75 @@ public class FileUtils {
     }
     
     /**
-     * Safely appends content to a file
+     * Appends content to a file and waits until it is on disk. Concurrent appends to the same
+     * file are written and forced together (see {@link DurableAppender}).
      */
     public static void safeAppendToFile(Path file, String content) throws IOException {
+        DurableAppender.forFile(file).append(content.getBytes());
+    }
+    
+    /**
+     * Appends content to a file that is checked and rebuilt from other data when it is found
+     * stale or missing, without waiting for the disk
+     */
+    public static void appendToDerivedFile(Path file, String content) throws IOException {
         Files.createDirectories(file.getParent());
         Files.write(file, content.getBytes(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
     }
     
+    /**
+     * Gets the length of a file up to the end of its last complete line, leaving out a final
+     * line that has no newline yet
+     */
+    public static long getCompleteLength(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return completeLength(channel);
+        }
+    }
+
+    /**
+     * Cuts off a final line that has no newline, left by a crash partway through an append, so
+     * the next append starts on a fresh line. Returns whether anything was cut off.
+     */
+    public static boolean truncateIncompleteLine(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        // An appender holding the file would otherwise go on from the old length
+        DurableAppender.release(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long end = completeLength(channel);
+            if (end == channel.size()) {
+                return false;
+            }
+            channel.truncate(end);
+            channel.force(false);
+            return true;
+        }
+    }
+
+    private static long completeLength(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long end = channel.size();
+        while (end > 0) {
+            long start = Math.max(0, end - buffer.capacity());
+            buffer.clear().limit((int) (end - start));
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) > 0) {
+                // Keep reading until the window is full
+            }
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
     /**
      * Gets the size of a file in bytes
      */
@@ -109,7 +228,7 @@ public class FileUtils {
         StringBuilder manifest = new StringBuilder();
         manifest.append("Backup Manifest\n");
         manifest.append("===============\n");
-        manifest.append("Backup Date: ").append(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))).append("\n");
+        manifest.append("Backup Date: ").append(TimestampCodec.format(LocalDateTime.now())).append("\n");
         manifest.append("Files Backed Up:\n\n");
         
         long totalSize = 0;
@@ -0,0 +1,203 @@
+package controller;
+
+import model.BilledItem;
+import model.Money;
+import model.ProductSales;
+import util.CsvParser;
+import util.FileUtils;
+import util.SimpleLogger;
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * Log of the items sold in each sale, for per-product analytics.
+ *
+ * Items are appended at checkout to one file per calendar month under data/sales/, named
+ * items_YYYY-MM.csv, one line per bill line:
+ * <pre>
+ *   saleId,productId,quantity,unitPrice
+ * </pre>
+ * Each month keeps running per-product totals (see {@link ProductSalesRollup}), so best-seller
+ * queries read at most one small map per month and never the items themselves.
+ */
+public class LineItemLog {
+    private static final String ITEMS_DIR = "data/sales";
+    private static final String CSV_HEADER = "saleId,productId,quantity,unitPrice";
+    private static final String PARTITION_PREFIX = "items_";
+    private static final String PARTITION_SUFFIX = ".csv";
+    private static final String ROLLUP_SUFFIX = ".sum";
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static LineItemLog instance;
+
+    private final Path directory;
+    private final Map<YearMonth, ProductSalesRollup> rollups;
+    private final Set<YearMonth> checkedMonths;
+
+    private LineItemLog(Path directory) {
+        this.directory = directory;
+        this.rollups = new HashMap<>();
+        this.checkedMonths = new HashSet<>();
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            SimpleLogger.logError("Error preparing line-item directory", e);
+        }
+    }
+
+    public static synchronized LineItemLog getInstance() {
+        if (instance == null) {
+            instance = new LineItemLog(Paths.get(ITEMS_DIR));
+        }
+        return instance;
+    }
+
+    /**
+     * Appends the items of one sale to the file for the month it was made in
+     */
+    public synchronized void append(String saleId, LocalDateTime timestamp, List<BilledItem> items) throws IOException {
+        if (items.isEmpty()) {
+            return;
+        }
+        YearMonth month = YearMonth.from(timestamp);
+        Path file = checkedFile(month);
+        ProductSalesRollup rollup = loadedRollup(month);
+
+        StringBuilder record = new StringBuilder(48 * items.size() + CSV_HEADER.length() + 1);
+        long length = Files.exists(file) ? Files.size(file) : 0;
+        if (length == 0) {
+            record.append(CSV_HEADER).append('\n');
+        }
+        for (BilledItem item : items) {
+            record.append(saleId).append(',').append(item.getId()).append(',').append(item.getQuantity()).append(',');
+            Money.appendTo(record, item.getPriceCents()).append('\n');
+        }
+        FileUtils.safeAppendToFile(file, record.toString());
+
+        // Only whole sales are covered, so a rollup written now never stops partway through one
+        long itemsLength = length + record.length();
+        for (BilledItem item : items) {
+            rollup.recordAppend(item.getId(), item.getQuantity(), item.getPriceCents(), itemsLength);
+        }
+        rollup.checkpoint();
+    }
+
+    /**
+     * Checks whether any items are logged under a sale id, in the file for the month of the sale
+     */
+    public synchronized boolean contains(String saleId, LocalDateTime timestamp) throws IOException {
+        Path file = checkedFile(YearMonth.from(timestamp));
+        if (!Files.exists(file)) {
+            return false;
+        }
+        boolean[] found = {false};
+        CsvParser.parseFrom(file, 0, true, row -> {
+            if (!found[0] && row.getFieldCount() >= 1 && row.getString(0).equals(saleId)) {
+                found[0] = true;
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * Gets the totals of each product sold between two months inclusive, keyed by product id
+     */
+    public synchronized Map<String, ProductSales> getProductSales(YearMonth from, YearMonth to) {
+        Map<String, ProductSales> totals = new HashMap<>();
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            if (!Files.exists(partitionFile(month))) {
+                continue;
+            }
+            for (ProductSales product : loadedRollup(month).getProducts().values()) {
+                totals.computeIfAbsent(product.getProductId(), ProductSales::new).add(product);
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Gets the products with the most units sold between two months inclusive, best first.
+     * Ties go to the higher revenue, then to the lower product id.
+     */
+    public List<ProductSales> getTopSellers(YearMonth from, YearMonth to, int limit) {
+        Comparator<ProductSales> ranking = Comparator.comparingLong(ProductSales::getUnits)
+                .thenComparingLong(ProductSales::getRevenueCents)
+                .thenComparing(ProductSales::getProductId, Comparator.reverseOrder());
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        // Keep the best so far in a min-heap of at most limit entries, whose head is the one to drop
+        PriorityQueue<ProductSales> best = new PriorityQueue<>(limit + 1, ranking);
+        for (ProductSales product : getProductSales(from, to).values()) {
+            best.add(product);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+
+        List<ProductSales> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            result.add(best.poll());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Writes the per-product totals that lag behind the line items, if the log was started
+     */
+    public static synchronized void shutdown() {
+        if (instance == null) {
+            return;
+        }
+        instance.flush();
+        instance = null;
+    }
+
+    private synchronized void flush() {
+        for (ProductSalesRollup rollup : rollups.values()) {
+            rollup.flush();
+        }
+    }
+
+    /**
+     * Gets the file for a month, first cutting off a line left half-written by a crash if the
+     * file has not been checked since the application started
+     */
+    private Path checkedFile(YearMonth month) {
+        Path file = partitionFile(month);
+        if (checkedMonths.add(month)) {
+            try {
+                if (FileUtils.truncateIncompleteLine(file)) {
+                    SimpleLogger.logWarning("Discarding incomplete last line of line-item log " + file);
+                }
+            } catch (IOException e) {
+                SimpleLogger.logError("Error checking line-item log " + file, e);
+            }
+        }
+        return file;
+    }
+
+    private ProductSalesRollup loadedRollup(YearMonth month) {
+        ProductSalesRollup rollup = rollups.computeIfAbsent(month, m -> {
+            String baseName = PARTITION_PREFIX + m.format(MONTH_FORMATTER);
+            return new ProductSalesRollup(directory.resolve(baseName + ROLLUP_SUFFIX), checkedFile(m));
+        });
+        if (!rollup.isLoaded()) {
+            try {
+                rollup.load();
+            } catch (IOException e) {
+                System.err.println("Error reading line items: " + e.getMessage());
+            }
+        }
+        return rollup;
+    }
+
+    private Path partitionFile(YearMonth month) {
+        return directory.resolve(PARTITION_PREFIX + month.format(MONTH_FORMATTER) + PARTITION_SUFFIX);
+    }
+}
@@ -1,6 +1,11 @@
 import view.LoginView;
 import util.SimpleLogger;
 import controller.BackupController;
+import controller.BillingController;
+import controller.CatalogService;
+import controller.CheckoutWriter;
+import controller.LineItemLog;
+import controller.SalesStore;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 
@@ -21,6 +26,9 @@ public class Main {
         // Initialize backup controller
         backupController = new BackupController();
         
+        // Finish any checkouts a crash left half-saved
+        new BillingController().recoverCheckouts();
+        
         // Create and show the login window
         javax.swing.SwingUtilities.invokeLater(() -> {
             LoginView loginView = new LoginView();
@@ -47,6 +55,16 @@ public class Main {
             backupController.stopScheduledBackup();
         }
         
+        // Finish saving bills already handed over at checkout
+        CheckoutWriter.shutdown();
+        
+        // Write the sales totals that are only checkpointed every few sales
+        SalesStore.shutdown();
+        LineItemLog.shutdown();
+        
+        // Fold pending catalog changes into products.csv
+        CatalogService.shutdown();
+        
         // Close logger
         SimpleLogger.close();
     }
@@ -0,0 +1,155 @@
+package model;
+
+/**
+ * Immutable amount of money held as a whole number of minor units (cents).
+ *
+ * Amounts are exact: adding and multiplying never drift the way repeated double arithmetic does.
+ * The static helpers work on raw {@code long} minor units so bulk code (CSV loading, summing a
+ * year of sales, rendering tables) can parse, add and format without creating objects.
+ * The same two-decimal text layout is also used for discount percentages, which are kept as
+ * hundredths of a percent.
+ */
+public final class Money implements Comparable<Money> {
+    public static final Money ZERO = new Money(0);
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    /**
+     * Parses text such as "40", "40.5" or "-3.25"
+     */
+    public static Money parse(CharSequence text) {
+        return ofCents(parseMinorUnits(text));
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money && ((Money) o).cents == cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    /**
+     * Formats the amount with two decimals, e.g. "1234.50"
+     */
+    @Override
+    public String toString() {
+        return format(cents);
+    }
+
+    /**
+     * Computes the discount on an amount given in hundredths of a percent, rounded half up
+     */
+    public static long discountAmount(long cents, long discountBasisPoints) {
+        long product = Math.multiplyExact(cents, discountBasisPoints);
+        return product >= 0 ? (product + 5000) / 10000 : -((-product + 5000) / 10000);
+    }
+
+    /**
+     * Parses a plain decimal into minor units. Digits beyond the second decimal round half up.
+     *
+     * @throws NumberFormatException if the text is not a plain decimal number
+     */
+    public static long parseMinorUnits(CharSequence text) {
+        int i = 0;
+        int end = text.length();
+        while (i < end && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        while (end > i && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+
+        long units = 0;
+        int digits = 0;
+        int decimals = -1;
+        boolean roundUp = false;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            if (c < '0' || c > '9' || digits >= 17) {
+                throw new NumberFormatException("For input string: \"" + text + "\"");
+            }
+            digits++;
+            if (decimals < 0) {
+                units = units * 10 + (c - '0');
+            } else if (decimals < 2) {
+                units = units * 10 + (c - '0');
+                decimals++;
+            } else if (decimals == 2) {
+                roundUp = c >= '5';
+                decimals++;
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("For input string: \"" + text + "\"");
+        }
+
+        for (int d = Math.max(decimals, 0); d < 2; d++) {
+            units *= 10;
+        }
+        if (roundUp) {
+            units++;
+        }
+        return negative ? -units : units;
+    }
+
+    /**
+     * Formats minor units with two decimals, e.g. 123450 as "1234.50"
+     */
+    public static String format(long cents) {
+        return appendTo(new StringBuilder(24), cents).toString();
+    }
+
+    /**
+     * Formats a percentage held in hundredths of a percent, dropping a zero fraction
+     * (500 as "5", 550 as "5.50")
+     */
+    public static String formatPercent(long basisPoints) {
+        return basisPoints % 100 == 0 ? Long.toString(basisPoints / 100) : format(basisPoints);
+    }
+
+    /**
+     * Appends minor units with two decimals to a builder without intermediate objects
+     */
+    public static StringBuilder appendTo(StringBuilder sb, long cents) {
+        if (cents < 0) {
+            sb.append('-');
+        }
+        long whole = Math.abs(cents / 100);
+        long fraction = Math.abs(cents % 100);
+        sb.append(whole).append('.');
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        return sb.append(fraction);
+    }
+}
@@ -4,17 +4,17 @@ public class Product {
     private String id;
     private String name;
     private String category;
-    private double price;
+    private long priceCents;
     private int quantity;
 
     public Product() {
     }
 
-    public Product(String id, String name, String category, double price, int quantity) {
+    public Product(String id, String name, String category, Money price, int quantity) {
         this.id = id;
         this.name = name;
         this.category = category;
-        this.price = price;
+        this.priceCents = price.getCents();
         this.quantity = quantity;
     }
 
@@ -31,8 +31,12 @@ public class Product {
         return category;
     }
 
-    public double getPrice() {
-        return price;
+    public Money getPrice() {
+        return Money.ofCents(priceCents);
+    }
+
+    public long getPriceCents() {
+        return priceCents;
     }
 
     public int getQuantity() {
@@ -52,8 +56,8 @@ public class Product {
         this.category = category;
     }
 
-    public void setPrice(double price) {
-        this.price = price;
+    public void setPrice(Money price) {
+        this.priceCents = price.getCents();
     }
 
     public void setQuantity(int quantity) {
@@ -66,7 +70,7 @@ public class Product {
                 "id='" + id + '\'' +
                 ", name='" + name + '\'' +
                 ", category='" + category + '\'' +
-                ", price=" + price +
+                ", price=" + Money.format(priceCents) +
                 ", quantity=" + quantity +
                 '}';
     }
@@ -0,0 +1,143 @@
+package model;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * In-memory product catalog with a hash index on product id.
+ * Lookups, updates and deletes by id run in constant time regardless of catalog size,
+ * while iteration keeps the order products were loaded or added in.
+ * A search index over id, name and category and a category index with per-category
+ * totals are kept in step with every change, so stock changes must go through
+ * {@link #adjustQuantity} rather than Product.setQuantity.
+ */
+public class ProductCatalog {
+    private final Map<String, Product> productsById;
+    private final ProductSearchIndex searchIndex;
+    private final CategoryIndex categoryIndex;
+
+    public ProductCatalog() {
+        this.productsById = new LinkedHashMap<>();
+        this.searchIndex = new ProductSearchIndex();
+        this.categoryIndex = new CategoryIndex();
+    }
+
+    /**
+     * Adds a product, replacing any existing product with the same id
+     */
+    public void add(Product product) {
+        Product previous = productsById.put(product.getId(), product);
+        if (previous != null) {
+            categoryIndex.remove(previous);
+        }
+        searchIndex.add(product);
+        categoryIndex.add(product);
+    }
+
+    /**
+     * Replaces an existing product. Returns false if no product has that id.
+     */
+    public boolean update(Product product) {
+        if (!productsById.containsKey(product.getId())) {
+            return false;
+        }
+        add(product);
+        return true;
+    }
+
+    /**
+     * Removes a product by id. Returns the removed product, or null if none was found.
+     */
+    public Product remove(String id) {
+        Product removed = productsById.remove(id);
+        if (removed != null) {
+            searchIndex.remove(id);
+            categoryIndex.remove(removed);
+        }
+        return removed;
+    }
+
+    /**
+     * Changes a product's stock by delta, keeping category totals current.
+     * Returns false if no product has that id.
+     */
+    public boolean adjustQuantity(String id, int delta) {
+        Product product = productsById.get(id);
+        if (product == null) {
+            return false;
+        }
+        categoryIndex.adjustQuantity(product, delta);
+        product.setQuantity(product.getQuantity() + delta);
+        return true;
+    }
+
+    public Product get(String id) {
+        return productsById.get(id);
+    }
+
+    public boolean contains(String id) {
+        return productsById.containsKey(id);
+    }
+
+    public int size() {
+        return productsById.size();
+    }
+
+    public void clear() {
+        productsById.clear();
+        searchIndex.clear();
+        categoryIndex.clear();
+    }
+
+    /**
+     * Gets the products in a category (matched case-insensitively) in the order they were indexed
+     */
+    public List<Product> getByCategory(String category) {
+        List<Product> results = new ArrayList<>();
+        for (String id : categoryIndex.getProductIds(category)) {
+            results.add(productsById.get(id));
+        }
+        return results;
+    }
+
+    /**
+     * Gets product count, units in stock and stock value for every category
+     */
+    public List<CategoryIndex.Facet> getCategoryFacets() {
+        return categoryIndex.getFacets();
+    }
+
+    /**
+     * Finds products whose id, name or category words start with every word of the query.
+     * An empty query matches nothing.
+     */
+    public List<Product> search(String query, int limit) {
+        return search(query, limit, product -> true);
+    }
+
+    /**
+     * Finds products matching the query as {@link #search(String, int)} does, keeping only those
+     * the filter accepts; the limit counts accepted products only
+     */
+    public List<Product> search(String query, int limit, Predicate<Product> filter) {
+        List<Product> results = new ArrayList<>();
+        for (String id : searchIndex.search(query, limit, id -> filter.test(productsById.get(id)))) {
+            results.add(productsById.get(id));
+        }
+        return results;
+    }
+
+    /**
+     * Gets a snapshot of all products in catalog order
+     */
+    public List<Product> getAll() {
+        return new ArrayList<>(productsById.values());
+    }
+
+    /**
+     * Gets a read-only view of all products in catalog order
+     */
+    public Collection<Product> values() {
+        return Collections.unmodifiableCollection(productsById.values());
+    }
+}
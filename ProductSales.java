@@ -0,0 +1,56 @@
+package model;
+
+/**
+ * Units sold and revenue of one product over some period. Revenue is at the listed unit
+ * prices, before any bill discount.
+ */
+public class ProductSales {
+    private final String productId;
+    private long units;
+    private long revenueCents;
+
+    public ProductSales(String productId) {
+        this.productId = productId;
+    }
+
+    public ProductSales(String productId, long units, long revenueCents) {
+        this.productId = productId;
+        this.units = units;
+        this.revenueCents = revenueCents;
+    }
+
+    public void add(long quantity, long unitPriceCents) {
+        units += quantity;
+        revenueCents += quantity * unitPriceCents;
+    }
+
+    public void add(ProductSales other) {
+        units += other.units;
+        revenueCents += other.revenueCents;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public long getUnits() {
+        return units;
+    }
+
+    public long getRevenueCents() {
+        return revenueCents;
+    }
+
+    public Money getRevenue() {
+        return Money.ofCents(revenueCents);
+    }
+
+    @Override
+    public String toString() {
+        return "ProductSales{" +
+                "productId='" + productId + '\'' +
+                ", units=" + units +
+                ", revenue=" + Money.format(revenueCents) +
+                '}';
+    }
+}
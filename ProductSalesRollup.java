@@ -0,0 +1,170 @@
+package controller;
+
+import model.Money;
+import model.ProductSales;
+import util.CsvParser;
+import util.FileUtils;
+import util.SimpleLogger;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Per-product totals of one month's line items, persisted beside the line-item file so the
+ * month's best sellers are known without reading the items again.
+ *
+ * The file records how many bytes of the line-item file it covers, then one line per product:
+ * <pre>
+ *   #length,bytes
+ *   productId,units,revenue
+ * </pre>
+ * Items appended past the covered length are folded in on load, so the file is only
+ * rewritten every few appends and at shutdown rather than on each one. A rollup that covers more than the
+ * line-item file holds, or cannot be read, is rebuilt from the line items.
+ */
+public class ProductSalesRollup {
+    private static final String LENGTH_PREFIX = "#length,";
+    private static final int WRITE_INTERVAL = 32;
+
+    private final Path rollupFile;
+    private final Path itemsFile;
+    private final Map<String, ProductSales> salesByProduct;
+    private long coveredLength;
+    private long writtenLength;
+    private int unwrittenAppends;
+    private boolean loaded;
+
+    public ProductSalesRollup(Path rollupFile, Path itemsFile) {
+        this.rollupFile = rollupFile;
+        this.itemsFile = itemsFile;
+        this.salesByProduct = new HashMap<>();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Reads the rollup and brings it up to date with the line-item file
+     */
+    public void load() throws IOException {
+        clear();
+        loaded = true;
+        long itemsLength = Files.exists(itemsFile) ? Files.size(itemsFile) : 0;
+        if (itemsLength == 0) {
+            Files.deleteIfExists(rollupFile);
+            return;
+        }
+
+        if (!readRollup() || coveredLength > itemsLength) {
+            SimpleLogger.logInfo("Rebuilding product sales rollup " + rollupFile);
+            clear();
+        }
+        writtenLength = coveredLength;
+        if (coveredLength < itemsLength) {
+            coveredLength = CsvParser.parseFrom(itemsFile, coveredLength, coveredLength == 0, row -> {
+                try {
+                    if (row.getFieldCount() >= 4) {
+                        add(row.getString(1), row.getInt(2), row.getMinorUnits(3));
+                    }
+                } catch (NumberFormatException e) {
+                    System.err.println("Error parsing line item: " + row.getLine() + " - " + e.getMessage());
+                }
+            });
+            write();
+        }
+    }
+
+    /**
+     * Adds an item just appended to the line-item file, which is now the given number of bytes long
+     */
+    public void recordAppend(String productId, int quantity, long unitPriceCents, long itemsLength) {
+        add(productId, quantity, unitPriceCents);
+        coveredLength = itemsLength;
+    }
+
+    /**
+     * Writes the rollup if enough appends have gone unwritten
+     */
+    public void checkpoint() {
+        if (++unwrittenAppends >= WRITE_INTERVAL) {
+            write();
+        }
+    }
+
+    /**
+     * Writes the rollup if it covers appends the file does not
+     */
+    public void flush() {
+        if (loaded) {
+            write();
+        }
+    }
+
+    /**
+     * Gets the totals of every product sold in the month, keyed by product id
+     */
+    public Map<String, ProductSales> getProducts() {
+        return Collections.unmodifiableMap(salesByProduct);
+    }
+
+    private void add(String productId, int quantity, long unitPriceCents) {
+        salesByProduct.computeIfAbsent(productId, ProductSales::new).add(quantity, unitPriceCents);
+    }
+
+    private void clear() {
+        salesByProduct.clear();
+        coveredLength = 0;
+        writtenLength = 0;
+        unwrittenAppends = 0;
+    }
+
+    private boolean readRollup() {
+        if (!Files.exists(rollupFile)) {
+            return false;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(rollupFile, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null || !header.startsWith(LENGTH_PREFIX)) {
+                return false;
+            }
+            coveredLength = Long.parseLong(header.substring(LENGTH_PREFIX.length()).trim());
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] parts = line.split(",");
+                salesByProduct.put(parts[0], new ProductSales(parts[0],
+                        Long.parseLong(parts[1]), Money.parseMinorUnits(parts[2])));
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            SimpleLogger.logWarning("Could not read product sales rollup " + rollupFile + ": " + e);
+            return false;
+        }
+    }
+
+    private void write() {
+        unwrittenAppends = 0;
+        if (coveredLength == writtenLength) {
+            return;
+        }
+        StringBuilder content = new StringBuilder(32 + salesByProduct.size() * 40);
+        content.append(LENGTH_PREFIX).append(coveredLength).append('\n');
+        for (ProductSales product : salesByProduct.values()) {
+            content.append(product.getProductId()).append(',').append(product.getUnits()).append(',');
+            Money.appendTo(content, product.getRevenueCents()).append('\n');
+        }
+        try {
+            FileUtils.writeDerivedTextFile(rollupFile, content.toString());
+            writtenLength = coveredLength;
+        } catch (IOException e) {
+            // The next load folds in whatever the stale file does not cover
+            SimpleLogger.logError("Error writing product sales rollup " + rollupFile, e);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package model;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Token prefix index over product id, name and category for type-ahead search.
+ *
+ * Each product is split into lower-case alphanumeric tokens. Tokens are kept in a sorted map,
+ * so all tokens starting with a prefix form one contiguous range that is found with a single
+ * tree lookup. A query matches a product when every query word is a prefix of one of the
+ * product's tokens.
+ */
+public class ProductSearchIndex {
+    private final NavigableMap<String, Set<String>> idsByToken;
+    private final Map<String, String[]> tokensById;
+
+    public ProductSearchIndex() {
+        this.idsByToken = new TreeMap<>();
+        this.tokensById = new HashMap<>();
+    }
+
+    public void add(Product product) {
+        remove(product.getId());
+        String[] tokens = tokenize(product.getId() + " " + product.getName() + " " + product.getCategory());
+        tokensById.put(product.getId(), tokens);
+        for (String token : tokens) {
+            idsByToken.computeIfAbsent(token, t -> new LinkedHashSet<>()).add(product.getId());
+        }
+    }
+
+    public void remove(String id) {
+        String[] tokens = tokensById.remove(id);
+        if (tokens == null) {
+            return;
+        }
+        for (String token : tokens) {
+            Set<String> ids = idsByToken.get(token);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    idsByToken.remove(token);
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        idsByToken.clear();
+        tokensById.clear();
+    }
+
+    /**
+     * Finds the ids of products matching every word of the query, up to the given limit
+     */
+    public List<String> search(String query, int limit) {
+        return search(query, limit, id -> true);
+    }
+
+    /**
+     * Finds the ids of products matching every word of the query that the filter accepts, up to
+     * the given limit; rejected products do not count towards it
+     */
+    public List<String> search(String query, int limit, Predicate<String> filter) {
+        String[] words = tokenize(query);
+        List<String> results = new ArrayList<>();
+        if (words.length == 0 || limit <= 0) {
+            return results;
+        }
+
+        // Drive the search from the longest word, which usually has the narrowest range
+        String driver = words[0];
+        for (String word : words) {
+            if (word.length() > driver.length()) {
+                driver = word;
+            }
+        }
+
+        SortedMap<String, Set<String>> range = prefixRange(driver);
+        // A product can only repeat when several of its tokens share the prefix
+        if (range.isEmpty()) {
+            return results;
+        }
+        Set<String> seen = range.firstKey().equals(range.lastKey()) ? null : new HashSet<>();
+        for (Set<String> ids : range.values()) {
+            for (String id : ids) {
+                if ((seen == null || seen.add(id)) && matchesAll(tokensById.get(id), words) && filter.test(id)) {
+                    results.add(id);
+                    if (results.size() >= limit) {
+                        return results;
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private SortedMap<String, Set<String>> prefixRange(String prefix) {
+        return idsByToken.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private static boolean matchesAll(String[] tokens, String[] words) {
+        for (String word : words) {
+            boolean found = false;
+            for (String token : tokens) {
+                if (token.startsWith(word)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                current.append(Character.toLowerCase(c));
+            } else if (current.length() > 0) {
+                tokens.add(current.toString());
+                current.setLength(0);
+            }
+        }
+        if (current.length() > 0) {
+            tokens.add(current.toString());
+        }
+        return tokens.stream().distinct().toArray(String[]::new);
+    }
+}
@@ -0,0 +1,75 @@
+package view;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.List;
+import model.Money;
+import model.Product;
+
+/**
+ * Read-only table model backed directly by a list of catalog products.
+ * Cells are formatted only when the table asks for them, which is only for visible rows,
+ * and replacing the list fires a single change event.
+ */
+public class ProductTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    private final String[] columnNames;
+    private List<Product> products;
+
+    /**
+     * Creates a model with columns for id, name, category, price and quantity, using the given headings
+     */
+    public ProductTableModel(String[] columnNames) {
+        this.columnNames = columnNames.clone();
+        this.products = new ArrayList<>();
+    }
+
+    public void setProducts(List<Product> products) {
+        this.products = products;
+        fireTableDataChanged();
+    }
+
+    public Product getProductAt(int row) {
+        return products.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return products.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == 4 ? Integer.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Product product = products.get(row);
+        switch (column) {
+            case 0:
+                return product.getId();
+            case 1:
+                return product.getName();
+            case 2:
+                return product.getCategory();
+            case 3:
+                return Money.format(product.getPriceCents());
+            case 4:
+                return product.getQuantity();
+            default:
+                return null;
+        }
+    }
+}
@@ -1,17 +1,25 @@
 package view;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.util.List;
+import controller.CatalogService;
 import controller.ProductController;
+import model.CategoryIndex;
+import model.Money;
 import model.Product;
 
 public class ProductView extends JFrame {
     private ProductController controller;
+    private final CatalogService.CatalogListener catalogListener = () -> SwingUtilities.invokeLater(this::refreshTable);
     private JTable productTable;
-    private DefaultTableModel tableModel;
+    private ProductTableModel tableModel;
     private JTextField idField, nameField, categoryField, priceField, quantityField;
     private JButton addButton, updateButton, deleteButton, refreshButton, backButton;
+    private JComboBox<String> categoryFilter;
+    private JLabel categorySummaryLabel;
+    private boolean updatingCategoryFilter = false;
+    private static final String ALL_CATEGORIES = "All Categories";
 
     public ProductView() {
         controller = new ProductController();
@@ -19,7 +27,8 @@ public class ProductView extends JFrame {
         setupLayout();
         attachListeners();
         configureFrame();
-        loadTableData();
+        refreshTable();
+        controller.addCatalogListener(catalogListener);
     }
 
     private void initializeComponents() {
@@ -37,14 +46,13 @@ public class ProductView extends JFrame {
         refreshButton = new JButton("Refresh");
         backButton = new JButton("Back to Dashboard");
 
+        // Category filter
+        categoryFilter = new JComboBox<>();
+        categorySummaryLabel = new JLabel(" ");
+
         // Table setup
         String[] columnNames = {"ID", "Name", "Category", "Price", "Quantity"};
-        tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false; // Make table non-editable
-            }
-        };
+        tableModel = new ProductTableModel(columnNames);
         productTable = new JTable(tableModel);
         productTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         productTable.getTableHeader().setReorderingAllowed(false);
@@ -60,10 +68,19 @@ public class ProductView extends JFrame {
         titlePanel.add(titleLabel);
         add(titlePanel, BorderLayout.NORTH);
 
+        // Category filter above the table
+        JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        filterPanel.add(new JLabel("Category:"));
+        filterPanel.add(categoryFilter);
+        filterPanel.add(categorySummaryLabel);
+
         // Table in center
         JScrollPane scrollPane = new JScrollPane(productTable);
         scrollPane.setPreferredSize(new Dimension(800, 300));
-        add(scrollPane, BorderLayout.CENTER);
+        JPanel tablePanel = new JPanel(new BorderLayout());
+        tablePanel.add(filterPanel, BorderLayout.NORTH);
+        tablePanel.add(scrollPane, BorderLayout.CENTER);
+        add(tablePanel, BorderLayout.CENTER);
 
         // Input panel on the left
         JPanel inputPanel = new JPanel(new GridBagLayout());
@@ -128,16 +145,22 @@ public class ProductView extends JFrame {
         deleteButton.addActionListener(e -> handleDelete());
         refreshButton.addActionListener(e -> refreshData());
         backButton.addActionListener(e -> handleBack());
+        categoryFilter.addActionListener(e -> {
+            if (!updatingCategoryFilter) {
+                refreshTable();
+            }
+        });
 
         // When table row is selected, populate fields
         productTable.getSelectionModel().addListSelectionListener(e -> {
             int selectedRow = productTable.getSelectedRow();
             if (selectedRow >= 0) {
-                idField.setText(tableModel.getValueAt(selectedRow, 0).toString());
-                nameField.setText(tableModel.getValueAt(selectedRow, 1).toString());
-                categoryField.setText(tableModel.getValueAt(selectedRow, 2).toString());
-                priceField.setText(tableModel.getValueAt(selectedRow, 3).toString());
-                quantityField.setText(tableModel.getValueAt(selectedRow, 4).toString());
+                Product product = tableModel.getProductAt(selectedRow);
+                idField.setText(product.getId());
+                nameField.setText(product.getName());
+                categoryField.setText(product.getCategory());
+                priceField.setText(Money.format(product.getPriceCents()));
+                quantityField.setText(String.valueOf(product.getQuantity()));
             }
         });
     }
@@ -149,24 +172,52 @@ public class ProductView extends JFrame {
         setLocationRelativeTo(null);
     }
 
-    private void loadTableData() {
-        controller.loadProducts();
-        refreshTable();
+    private void refreshTable() {
+        refreshCategoryFilter();
+        String category = getSelectedCategory();
+        List<Product> products = category == null
+                ? controller.getAllProducts()
+                : controller.getProductsByCategory(category);
+
+        tableModel.setProducts(products);
     }
 
-    private void refreshTable() {
-        tableModel.setRowCount(0);
-        for (Product product : controller.getAllProducts()) {
-            tableModel.addRow(new Object[]{
-                    product.getId(),
-                    product.getName(),
-                    product.getCategory(),
-                    String.format("%.2f", product.getPrice()),
-                    product.getQuantity()
-            });
+    /**
+     * Rebuilds the category choices from the catalog's category index, keeping the current selection
+     */
+    private void refreshCategoryFilter() {
+        String selected = getSelectedCategory();
+        List<CategoryIndex.Facet> facets = controller.getCategoryFacets();
+
+        updatingCategoryFilter = true;
+        try {
+            categoryFilter.removeAllItems();
+            categoryFilter.addItem(ALL_CATEGORIES);
+            for (CategoryIndex.Facet facet : facets) {
+                categoryFilter.addItem(facet.getName());
+                if (facet.getName().equalsIgnoreCase(selected)) {
+                    categoryFilter.setSelectedItem(facet.getName());
+                }
+            }
+        } finally {
+            updatingCategoryFilter = false;
+        }
+
+        String current = getSelectedCategory();
+        categorySummaryLabel.setText(" ");
+        for (CategoryIndex.Facet facet : facets) {
+            if (facet.getName().equals(current)) {
+                categorySummaryLabel.setText(String.format("%d products, %d in stock, stock value %s",
+                        facet.getProductCount(), facet.getTotalQuantity(), facet.getStockValue()));
+            }
         }
     }
 
+    private String getSelectedCategory() {
+        Object selected = categoryFilter.getSelectedItem();
+        return selected == null || ALL_CATEGORIES.equals(selected) ? null : selected.toString();
+    }
+
     private void refreshData() {
         controller.loadProducts();
         refreshTable();
@@ -194,7 +245,7 @@ public class ProductView extends JFrame {
         }
 
         try {
-            Double.parseDouble(priceField.getText().trim());
+            Money.parseMinorUnits(priceField.getText());
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "Price must be a valid number!", "Validation Error", JOptionPane.ERROR_MESSAGE);
             return false;
@@ -227,7 +278,7 @@ public class ProductView extends JFrame {
                 id,
                 nameField.getText().trim(),
                 categoryField.getText().trim(),
-                Double.parseDouble(priceField.getText().trim()),
+                Money.parse(priceField.getText()),
                 Integer.parseInt(quantityField.getText().trim())
         );
 
@@ -253,7 +304,7 @@ public class ProductView extends JFrame {
                 id,
                 nameField.getText().trim(),
                 categoryField.getText().trim(),
-                Double.parseDouble(priceField.getText().trim()),
+                Money.parse(priceField.getText()),
                 Integer.parseInt(quantityField.getText().trim())
         );
 
@@ -271,7 +322,7 @@ public class ProductView extends JFrame {
             return;
         }
 
-        String id = tableModel.getValueAt(selectedRow, 0).toString();
+        String id = tableModel.getProductAt(selectedRow).getId();
         
         int confirm = JOptionPane.showConfirmDialog(
                 this,
@@ -294,6 +345,12 @@ public class ProductView extends JFrame {
         dashboard.showWindow();
     }
 
+    @Override
+    public void dispose() {
+        controller.removeCatalogListener(catalogListener);
+        super.dispose();
+    }
+
     public void showWindow() {
         setVisible(true);
     }
@@ -4,58 +4,96 @@ import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.LocalDateTime;
 
-public class Sale {
+public class Sale implements SaleRecord {
+    private long billId;
     private LocalDate date;
     private LocalTime time;
     private LocalDateTime timestamp;
-    private double total;
-    private double discount;
-    private double netTotal;
+    private long totalCents;
+    private long discountBasisPoints;
+    private long netTotalCents;
 
     public Sale() {
     }
 
-    public Sale(LocalDate date, LocalTime time, double total, double discount, double netTotal) {
-        this.date = date;
-        this.time = time;
-        this.timestamp = LocalDateTime.of(date, time);
-        this.total = total;
-        this.discount = discount;
-        this.netTotal = netTotal;
+    public Sale(LocalDate date, LocalTime time, Money total, long discountBasisPoints, Money netTotal) {
+        this(LocalDateTime.of(date, time), total.getCents(), discountBasisPoints, netTotal.getCents());
+    }
+
+    public Sale(LocalDateTime timestamp, Money total, long discountBasisPoints, Money netTotal) {
+        this(timestamp, total.getCents(), discountBasisPoints, netTotal.getCents());
     }
 
-    public Sale(LocalDateTime timestamp, double total, double discount, double netTotal) {
+    /**
+     * Creates a sale from raw minor units; the discount is in hundredths of a percent
+     */
+    public Sale(LocalDateTime timestamp, long totalCents, long discountBasisPoints, long netTotalCents) {
+        this(0, timestamp, totalCents, discountBasisPoints, netTotalCents);
+    }
+
+    /**
+     * Creates the sale of a numbered bill from raw minor units
+     */
+    public Sale(long billId, LocalDateTime timestamp, long totalCents, long discountBasisPoints, long netTotalCents) {
+        this.billId = billId;
         this.timestamp = timestamp;
         this.date = timestamp.toLocalDate();
         this.time = timestamp.toLocalTime();
-        this.total = total;
-        this.discount = discount;
-        this.netTotal = netTotal;
+        this.totalCents = totalCents;
+        this.discountBasisPoints = discountBasisPoints;
+        this.netTotalCents = netTotalCents;
     }
 
     // Getters
+
+    @Override
+    public long getBillId() {
+        return billId;
+    }
+
+    @Override
     public LocalDate getDate() {
         return date;
     }
 
+    @Override
     public LocalTime getTime() {
         return time;
     }
 
+    @Override
     public LocalDateTime getTimestamp() {
         return timestamp;
     }
 
-    public double getTotal() {
-        return total;
+    @Override
+    public Money getTotal() {
+        return Money.ofCents(totalCents);
+    }
+
+    @Override
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    @Override
+    public long getDiscountBasisPoints() {
+        return discountBasisPoints;
+    }
+
+    @Override
+    public Money getDiscountAmount() {
+        return Money.ofCents(totalCents - netTotalCents);
     }
 
-    public double getDiscount() {
-        return discount;
+    @Override
+    public Money getNetTotal() {
+        return Money.ofCents(netTotalCents);
     }
 
-    public double getNetTotal() {
-        return netTotal;
+    @Override
+    public long getNetTotalCents() {
+        return netTotalCents;
     }
 
     // Setters
@@ -79,26 +117,27 @@ public class Sale {
         this.time = timestamp.toLocalTime();
     }
 
-    public void setTotal(double total) {
-        this.total = total;
+    public void setTotal(Money total) {
+        this.totalCents = total.getCents();
     }
 
-    public void setDiscount(double discount) {
-        this.discount = discount;
+    public void setDiscountBasisPoints(long discountBasisPoints) {
+        this.discountBasisPoints = discountBasisPoints;
     }
 
-    public void setNetTotal(double netTotal) {
-        this.netTotal = netTotal;
+    public void setNetTotal(Money netTotal) {
+        this.netTotalCents = netTotal.getCents();
     }
 
     @Override
     public String toString() {
         return "Sale{" +
-                "date=" + date +
+                "billId=" + billId +
+                ", date=" + date +
                 ", time=" + time +
-                ", total=" + total +
-                ", discount=" + discount +
-                ", netTotal=" + netTotal +
+                ", total=" + Money.format(totalCents) +
+                ", discount=" + Money.format(discountBasisPoints) + "%" +
+                ", netTotal=" + Money.format(netTotalCents) +
                 '}';
     }
 }
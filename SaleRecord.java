@@ -0,0 +1,41 @@
+package model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * Read-only view of one recorded sale, implemented both by {@link Sale} and by the rows of a
+ * {@link SalesTable}
+ */
+public interface SaleRecord {
+
+    /**
+     * Gets the number of the bill the sale was made on, or 0 if it was made before bills were numbered
+     */
+    long getBillId();
+
+    LocalDate getDate();
+
+    LocalTime getTime();
+
+    LocalDateTime getTimestamp();
+
+    Money getTotal();
+
+    long getTotalCents();
+
+    /**
+     * Gets the discount percentage in hundredths of a percent (550 = 5.50%)
+     */
+    long getDiscountBasisPoints();
+
+    /**
+     * Gets the amount taken off the total by the discount
+     */
+    Money getDiscountAmount();
+
+    Money getNetTotal();
+
+    long getNetTotalCents();
+}
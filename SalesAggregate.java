@@ -0,0 +1,130 @@
+package controller;
+
+import model.Money;
+import model.Sale;
+import model.SalesSummary;
+import util.FileUtils;
+import util.SimpleLogger;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * Running all-time sales totals, persisted so the all-time figure never needs a scan.
+ *
+ * Besides the totals, the file records the length of every monthly partition it covers:
+ * <pre>
+ *   #total,count,gross,discount,net
+ *   yyyy-MM,bytes
+ * </pre>
+ * On startup the recorded lengths are compared with the partitions on disk. If any differ
+ * the totals are recomputed from the partitions' daily rollups, one small file per month.
+ * So the file is only rewritten every few appends and at shutdown rather than on each one.
+ */
+public class SalesAggregate {
+    private static final String TOTAL_PREFIX = "#total,";
+    private static final int WRITE_INTERVAL = 32;
+
+    private final Path file;
+    private final NavigableMap<YearMonth, Long> coveredLengths;
+    private SalesSummary total;
+    private int unwrittenAppends;
+
+    public SalesAggregate(Path file) {
+        this.file = file;
+        this.coveredLengths = new TreeMap<>();
+        this.total = new SalesSummary();
+    }
+
+    /**
+     * Reads the stored totals. Returns false if they are missing, unreadable or do not cover
+     * exactly the given partition lengths, in which case the caller must rebuild them.
+     */
+    public boolean load(Map<YearMonth, Long> partitionLengths) {
+        coveredLengths.clear();
+        total = new SalesSummary();
+        unwrittenAppends = 0;
+        if (!Files.exists(file)) {
+            return partitionLengths.isEmpty();
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null || !header.startsWith(TOTAL_PREFIX)) {
+                return false;
+            }
+            String[] parts = header.substring(TOTAL_PREFIX.length()).split(",");
+            total = new SalesSummary(Integer.parseInt(parts[0]),
+                    Money.parseMinorUnits(parts[1]), Money.parseMinorUnits(parts[2]), Money.parseMinorUnits(parts[3]));
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] entry = line.split(",");
+                coveredLengths.put(YearMonth.parse(entry[0]), Long.parseLong(entry[1]));
+            }
+        } catch (IOException | RuntimeException e) {
+            SimpleLogger.logWarning("Could not read all-time sales totals " + file + ": " + e);
+            return false;
+        }
+        return coveredLengths.equals(partitionLengths);
+    }
+
+    /**
+     * Replaces the totals with ones computed elsewhere, covering the given partition lengths
+     */
+    public void rebuild(SalesSummary newTotal, Map<YearMonth, Long> partitionLengths) {
+        total = new SalesSummary(newTotal);
+        coveredLengths.clear();
+        coveredLengths.putAll(partitionLengths);
+        write();
+    }
+
+    /**
+     * Adds a sale just appended to a partition, which is now the given number of bytes long,
+     * writing the totals if enough appends have gone unwritten
+     */
+    public void recordAppend(Sale sale, YearMonth month, long partitionLength) {
+        total.add(sale);
+        coveredLengths.put(month, partitionLength);
+        if (++unwrittenAppends >= WRITE_INTERVAL) {
+            write();
+        }
+    }
+
+    /**
+     * Writes the totals if they cover appends the file does not
+     */
+    public void flush() {
+        if (unwrittenAppends > 0) {
+            write();
+        }
+    }
+
+    public SalesSummary getTotal() {
+        return new SalesSummary(total);
+    }
+
+    private void write() {
+        unwrittenAppends = 0;
+        StringBuilder content = new StringBuilder(64 + coveredLengths.size() * 24);
+        content.append(TOTAL_PREFIX).append(total.getCount()).append(',');
+        Money.appendTo(content, total.getGrossCents()).append(',');
+        Money.appendTo(content, total.getDiscountCents()).append(',');
+        Money.appendTo(content, total.getNetCents()).append('\n');
+        for (Map.Entry<YearMonth, Long> entry : coveredLengths.entrySet()) {
+            content.append(entry.getKey()).append(',').append(entry.getValue()).append('\n');
+        }
+        try {
+            FileUtils.writeDerivedTextFile(file, content.toString());
+        } catch (IOException e) {
+            // A stale file no longer matches the partitions and is rebuilt on the next start
+            SimpleLogger.logError("Error writing all-time sales totals " + file, e);
+        }
+    }
+}
@@ -1,25 +1,49 @@
 package controller;
 
-import model.Sale;
+import model.Money;
+import model.ProductSales;
+import model.SaleRecord;
+import model.SalesTable;
+import model.SalesSummary;
+import util.FileUtils;
+import util.TimestampCodec;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 public class SalesController {
-    private static final String SALES_CSV = "data/sales.csv";
     private static final String REPORTS_DIR = "reports/";
-    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+    private static final int EXPORT_PROGRESS_INTERVAL = 5000;
+
+    private final SalesStore salesStore;
+    private final LineItemLog lineItemLog;
+    private final BillArchive billArchive;
+
+    /**
+     * Receives the number of report rows written so far and the number expected in total, and
+     * returns false to cancel the export
+     */
+    public interface ExportProgressListener {
+        boolean onProgress(int written, int total);
+    }
 
     public SalesController() {
+        this.salesStore = SalesStore.getInstance();
+        this.lineItemLog = LineItemLog.getInstance();
+        this.billArchive = BillArchive.getInstance();
         ensureReportsDirectoryExists();
     }
 
@@ -31,94 +55,73 @@ public class SalesController {
         }
     }
 
-    public List<Sale> loadAllSales() {
-        List<Sale> sales = new ArrayList<>();
-        File file = new File(SALES_CSV);
-        
-        if (!file.exists()) {
-            System.err.println("Sales CSV file not found: " + SALES_CSV);
-            return sales;
-        }
+    /**
+     * Gets every recorded sale, most recent first
+     */
+    public List<SaleRecord> loadAllSales() {
+        return salesStore.getAll();
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            // Skip header line
-            reader.readLine();
-            
-            while ((line = reader.readLine()) != null && !line.trim().isEmpty()) {
-                try {
-                    String[] parts = line.split(",");
-                    if (parts.length >= 4) {
-                        LocalDateTime timestamp = LocalDateTime.parse(parts[0].trim(), DATE_TIME_FORMATTER);
-                        double total = Double.parseDouble(parts[1].trim());
-                        double discount = Double.parseDouble(parts[2].trim());
-                        double netTotal = Double.parseDouble(parts[3].trim());
-                        
-                        sales.add(new Sale(timestamp, total, discount, netTotal));
-                    }
-                } catch (DateTimeParseException | NumberFormatException e) {
-                    System.err.println("Error parsing sale line: " + line + " - " + e.getMessage());
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Error reading sales: " + e.getMessage());
-        }
-        
-        // Sort by timestamp (most recent first)
-        sales.sort((s1, s2) -> s2.getTimestamp().compareTo(s1.getTimestamp()));
-        return sales;
+    public List<SaleRecord> filterSales(LocalDate from, LocalDate to) {
+        return salesStore.getBetween(from, to);
     }
 
-    public List<Sale> filterSales(LocalDate from, LocalDate to) {
-        List<Sale> allSales = loadAllSales();
-        
-        return allSales.stream()
-                .filter(sale -> {
-                    LocalDate saleDate = sale.getDate();
-                    return !saleDate.isBefore(from) && !saleDate.isAfter(to);
-                })
-                .collect(Collectors.toList());
+    public List<SaleRecord> getLastNDays(int days) {
+        LocalDate today = LocalDate.now();
+        return salesStore.getBetween(today.minusDays(days - 1), today);
     }
 
-    public List<Sale> getLastNDays(int days) {
-        List<Sale> allSales = loadAllSales();
-        if (allSales.isEmpty()) {
-            return allSales;
+    /**
+     * Gets the net total of each day with sales between two dates inclusive, from the daily rollups
+     */
+    public Map<LocalDate, Money> computeDailyTotals(LocalDate from, LocalDate to) {
+        Map<LocalDate, Money> dailyTotals = new TreeMap<>();
+        for (Map.Entry<LocalDate, SalesSummary> entry : salesStore.getDailySummaries(from, to).entrySet()) {
+            dailyTotals.put(entry.getKey(), entry.getValue().getNet());
         }
-        
-        LocalDate cutoffDate = LocalDate.now().minusDays(days - 1);
-        
-        return allSales.stream()
-                .filter(sale -> !sale.getDate().isBefore(cutoffDate))
-                .collect(Collectors.toList());
+        return dailyTotals;
     }
 
-    public Map<LocalDate, Double> computeDailyTotals(List<Sale> sales) {
-        Map<LocalDate, Double> dailyTotals = new HashMap<>();
-        
-        for (Sale sale : sales) {
-            LocalDate date = sale.getDate();
-            dailyTotals.merge(date, sale.getNetTotal(), Double::sum);
+    /**
+     * Gets the count, gross, discount and net totals of the sales between two dates inclusive
+     */
+    public SalesSummary getSummary(LocalDate from, LocalDate to) {
+        return salesStore.getSummary(from, to);
+    }
+
+    /**
+     * Gets the totals of each of the last N months, oldest first, including months without sales
+     */
+    public NavigableMap<YearMonth, SalesSummary> getMonthlySummaries(int months) {
+        YearMonth current = YearMonth.now();
+        YearMonth first = current.minusMonths(months - 1);
+        NavigableMap<YearMonth, SalesSummary> summaries = salesStore.getMonthlySummaries(first, current);
+        for (YearMonth month = first; !month.isAfter(current); month = month.plusMonths(1)) {
+            summaries.putIfAbsent(month, new SalesSummary());
         }
-        
-        return dailyTotals;
+        return summaries;
+    }
+
+    /**
+     * Gets the products with the most units sold over the last N months, best first
+     */
+    public List<ProductSales> getTopSellers(int months, int limit) {
+        YearMonth current = YearMonth.now();
+        return lineItemLog.getTopSellers(current.minusMonths(months - 1), current, limit);
     }
 
-    public double computeCumulativeTotal(List<Sale> sales) {
-        return sales.stream()
-                .mapToDouble(Sale::getNetTotal)
-                .sum();
+    public Money computeCumulativeTotal(List<? extends SaleRecord> sales) {
+        return Money.ofCents(SalesTable.sumNetTotalCents(sales));
     }
 
-    public double computeAllTimeTotal() {
-        List<Sale> allSales = loadAllSales();
-        return computeCumulativeTotal(allSales);
+    public Money computeAllTimeTotal() {
+        return salesStore.getAllTimeSummary().getNet();
     }
 
-    public void exportReport(List<Sale> sales, LocalDate from, LocalDate to) throws IOException {
+    public void exportReport(List<? extends SaleRecord> sales, LocalDate from, LocalDate to) throws IOException {
         String fileName = String.format("report_%s_to_%s.csv", 
-                from.format(DATE_FORMATTER), 
-                to.format(DATE_FORMATTER));
+                TimestampCodec.format(from),
+                TimestampCodec.format(to));
         
         Path outputFile = Paths.get(REPORTS_DIR + fileName);
         
@@ -127,18 +130,11 @@ public class SalesController {
             writer.println("Date,Time,Total,Discount,Net Total");
             
             // Write sales data
-            for (Sale sale : sales) {
-                writer.printf("%s,%s,%.2f,%.2f,%.2f%n",
-                        sale.getDate().format(DATE_FORMATTER),
-                        sale.getTime().format(TIME_FORMATTER),
-                        sale.getTotal(),
-                        sale.getDiscount(),
-                        sale.getNetTotal());
-            }
+            writeReportRows(writer, sales);
         }
     }
 
-    public void exportReport(List<Sale> sales, String customFileName) throws IOException {
+    public void exportReport(List<? extends SaleRecord> sales, String customFileName) throws IOException {
         Path outputFile = Paths.get(REPORTS_DIR + customFileName);
         
         try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(outputFile))) {
@@ -146,24 +142,126 @@ public class SalesController {
             writer.println("Date,Time,Total,Discount,Net Total");
             
             // Write sales data
-            for (Sale sale : sales) {
-                writer.printf("%s,%s,%.2f,%.2f,%.2f%n",
-                        sale.getDate().format(DATE_FORMATTER),
-                        sale.getTime().format(TIME_FORMATTER),
-                        sale.getTotal(),
-                        sale.getDiscount(),
-                        sale.getNetTotal());
+            writeReportRows(writer, sales);
+        }
+    }
+
+    /**
+     * Streams the sales between two dates straight from the sales files into a report, oldest
+     * first, without building the list of sales first. The report is written to a temporary
+     * file that replaces the report only once it is complete, so a failed or cancelled export
+     * leaves nothing behind. Returns the file written, or null if the listener cancelled it.
+     *
+     * @param gzip     whether to compress the report, adding .gz to the file name
+     * @param listener receives progress as rows are written and may cancel the export, or null
+     */
+    public Path exportReport(LocalDate from, LocalDate to, boolean gzip, ExportProgressListener listener) throws IOException {
+        String fileName = String.format("report_%s_to_%s.csv%s",
+                TimestampCodec.format(from),
+                TimestampCodec.format(to),
+                gzip ? ".gz" : "");
+        Path outputFile = Paths.get(REPORTS_DIR + fileName);
+        Path tempFile = outputFile.resolveSibling(fileName + ".tmp");
+        int expected = salesStore.getSummary(from, to).getCount();
+
+        boolean complete = false;
+        try {
+            OutputStream out = Files.newOutputStream(tempFile);
+            if (gzip) {
+                out = new GZIPOutputStream(out, EXPORT_BUFFER_SIZE);
+            }
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), EXPORT_BUFFER_SIZE)) {
+                writer.write("Date,Time,Total,Discount,Net Total\n");
+
+                StringBuilder row = new StringBuilder(64);
+                int[] written = {0};
+                salesStore.streamBetween(from, to, sale -> {
+                    row.setLength(0);
+                    appendReportRow(row, sale);
+                    try {
+                        writer.append(row).append('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    written[0]++;
+                    if (listener != null && written[0] % EXPORT_PROGRESS_INTERVAL == 0
+                            && !listener.onProgress(written[0], Math.max(expected, written[0]))) {
+                        throw new CancellationException();
+                    }
+                });
+                if (listener != null && !listener.onProgress(written[0], written[0])) {
+                    return null;
+                }
+            }
+            FileUtils.moveReplacing(tempFile, outputFile);
+            complete = true;
+            return outputFile;
+        } catch (CancellationException e) {
+            return null;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (!complete) {
+                Files.deleteIfExists(tempFile);
             }
         }
     }
 
+    /**
+     * Renders the receipt of the bill a sale was made on, or returns null if it is not archived.
+     * Sales made before bills were numbered are matched to their bill by time.
+     */
+    public String getReceipt(SaleRecord sale) throws IOException {
+        if (sale.getBillId() > 0) {
+            return getReceipt(sale.getBillId());
+        }
+        String billId = TimestampCodec.appendFileStamp(new StringBuilder(TimestampCodec.LENGTH), sale.getTimestamp()).toString();
+        return billArchive.renderReceipt(billId);
+    }
+
+    /**
+     * Renders the receipt of a bill by its number, or returns null if there is no such bill
+     */
+    public String getReceipt(long billNumber) throws IOException {
+        return billArchive.renderReceipt(Long.toString(billNumber));
+    }
+
+    /**
+     * Writes the archived bills made between two dates inclusive as one text and one CSV file
+     * per bill, in a new folder under reports/, and returns the folder
+     */
+    public Path exportBills(LocalDate from, LocalDate to) throws IOException {
+        Path folder = Paths.get(REPORTS_DIR + String.format("bills_%s_to_%s",
+                TimestampCodec.format(from),
+                TimestampCodec.format(to)));
+        billArchive.exportLegacy(from, to, folder);
+        return folder;
+    }
+
+    private void writeReportRows(PrintWriter writer, List<? extends SaleRecord> sales) {
+        StringBuilder row = new StringBuilder(64);
+        for (SaleRecord sale : sales) {
+            row.setLength(0);
+            appendReportRow(row, sale);
+            writer.println(row);
+        }
+    }
+
+    private static void appendReportRow(StringBuilder row, SaleRecord sale) {
+        TimestampCodec.appendTo(row, sale.getDate()).append(',');
+        TimestampCodec.appendTo(row, sale.getTime()).append(',');
+        Money.appendTo(row, sale.getTotalCents()).append(',');
+        Money.appendTo(row, sale.getDiscountBasisPoints()).append(',');
+        Money.appendTo(row, sale.getNetTotalCents());
+    }
+
     public List<String> getAvailableReportFiles() {
         File reportsDir = new File(REPORTS_DIR);
         if (!reportsDir.exists()) {
             return new ArrayList<>();
         }
         
-        File[] files = reportsDir.listFiles((dir, name) -> name.endsWith(".csv"));
+        File[] files = reportsDir.listFiles((dir, name) -> name.endsWith(".csv") || name.endsWith(".csv.gz"));
         if (files == null) {
             return new ArrayList<>();
         }
@@ -179,10 +277,10 @@ public class SalesController {
     }
 
     public String formatDate(LocalDate date) {
-        return date.format(DATE_FORMATTER);
+        return TimestampCodec.format(date);
     }
 
     public String formatDateTime(LocalDateTime dateTime) {
-        return dateTime.format(DATE_TIME_FORMATTER);
+        return TimestampCodec.format(dateTime);
     }
 }
@@ -0,0 +1,214 @@
+package controller;
+
+import util.CsvParser;
+import util.FileUtils;
+import util.SimpleLogger;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Sidecar index of a sales partition, mapping each day to the byte offset of its first row.
+ *
+ * Sales are appended in time order, so the rows of a date range are one contiguous run of
+ * bytes that can be read without touching the rest of the file. The index file is
+ * append-only, with one line per day:
+ * <pre>
+ *   yyyy-MM-dd,offset
+ *   #unordered                  a row was appended for a day before the last indexed day
+ * </pre>
+ * A row dated before the last indexed day (after a clock change, or a back-dated checkout
+ * recovered late) breaks that assumption, so the partition is marked unordered and every
+ * range covers the whole file from then on.
+ * On load every entry is checked against the sales file: offsets must increase, lie inside
+ * the file and point at a row of the named day. Rows past the last entry are then scanned
+ * for days the index has not seen yet. An index that fails the checks is rebuilt.
+ */
+public class SalesDayIndex {
+    private static final int DATE_LENGTH = 10;
+    private static final String UNORDERED_MARKER = "#unordered";
+
+    private final Path indexFile;
+    private final Path salesFile;
+    private final NavigableMap<LocalDate, Long> offsetsByDay;
+    private boolean unordered;
+    private boolean loaded;
+
+    public SalesDayIndex(Path indexFile, Path salesFile) {
+        this.indexFile = indexFile;
+        this.salesFile = salesFile;
+        this.offsetsByDay = new TreeMap<>();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Reads and validates the index, bringing it up to date with the sales file
+     */
+    public void load() throws IOException {
+        offsetsByDay.clear();
+        unordered = false;
+        loaded = true;
+        if (!Files.exists(salesFile)) {
+            Files.deleteIfExists(indexFile);
+            return;
+        }
+
+        boolean valid = readIndex() && validate();
+        if (!valid) {
+            SimpleLogger.logInfo("Rebuilding sales index " + indexFile);
+            offsetsByDay.clear();
+            unordered = false;
+        }
+
+        // Pick up days appended after the index was last written
+        int known = offsetsByDay.size();
+        boolean knownUnordered = unordered;
+        long scanFrom = offsetsByDay.isEmpty() ? 0 : offsetsByDay.lastEntry().getValue();
+        CsvParser.parseFrom(salesFile, scanFrom, scanFrom == 0, row -> {
+            try {
+                LocalDate day = row.getDateTime(0).toLocalDate();
+                if (offsetsByDay.isEmpty() || day.isAfter(offsetsByDay.lastKey())) {
+                    offsetsByDay.put(day, row.getOffset());
+                } else if (day.isBefore(offsetsByDay.lastKey())) {
+                    unordered = true;
+                }
+            } catch (DateTimeException | IndexOutOfBoundsException e) {
+                // Unparseable rows are reported when the sales are read
+            }
+        });
+
+        if (!valid || offsetsByDay.size() != known || unordered != knownUnordered) {
+            writeIndex();
+        }
+    }
+
+    /**
+     * Checks whether a row was appended out of day order, so ranges cover the whole file
+     */
+    public boolean isUnordered() {
+        return unordered;
+    }
+
+    /**
+     * Records that a row for the given day was appended at the given offset
+     */
+    public void recordAppend(LocalDate day, long offset) {
+        String line;
+        if (offsetsByDay.isEmpty() || day.isAfter(offsetsByDay.lastKey())) {
+            offsetsByDay.put(day, offset);
+            line = day + "," + offset + "\n";
+        } else if (day.isBefore(offsetsByDay.lastKey()) && !unordered) {
+            SimpleLogger.logWarning("Sale for " + day + " appended after later days; " + salesFile
+                    + " will be read in full for date ranges");
+            unordered = true;
+            line = UNORDERED_MARKER + "\n";
+        } else {
+            return;
+        }
+        try {
+            FileUtils.appendToDerivedFile(indexFile, line);
+        } catch (IOException e) {
+            // A partly written index would be trusted on the next load, so drop it to force a rebuild
+            SimpleLogger.logError("Error updating sales index " + indexFile, e);
+            try {
+                Files.deleteIfExists(indexFile);
+            } catch (IOException ignored) {
+                // Validation on the next load will reject it instead
+            }
+        }
+    }
+
+    /**
+     * Gets the byte range {start, end} holding the rows dated from one day to another inclusive.
+     * The end is Long.MAX_VALUE when the range runs to the end of the file. If the partition is
+     * unordered the range is the whole file from its header on, which callers filter by date.
+     */
+    public long[] byteRange(LocalDate from, LocalDate to) {
+        if (unordered) {
+            return new long[]{0, Long.MAX_VALUE};
+        }
+        Map.Entry<LocalDate, Long> first = offsetsByDay.ceilingEntry(from);
+        Map.Entry<LocalDate, Long> after = offsetsByDay.higherEntry(to);
+        long end = after == null ? Long.MAX_VALUE : after.getValue();
+        long start = first == null ? end : Math.min(first.getValue(), end);
+        return new long[]{start, end};
+    }
+
+    private boolean readIndex() {
+        if (!Files.exists(indexFile)) {
+            return false;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.equals(UNORDERED_MARKER)) {
+                    unordered = true;
+                    continue;
+                }
+                String[] parts = line.split(",");
+                offsetsByDay.put(LocalDate.parse(parts[0]), Long.parseLong(parts[1]));
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            SimpleLogger.logWarning("Could not read sales index " + indexFile + ": " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Checks every entry against the sales file: each offset must follow the previous one,
+     * start a line inside the file, and that line must be dated with the entry's day
+     */
+    private boolean validate() throws IOException {
+        try (FileChannel channel = FileChannel.open(salesFile, StandardOpenOption.READ)) {
+            long length = channel.size();
+            long previous = -1;
+            ByteBuffer buffer = ByteBuffer.allocate(DATE_LENGTH + 1);
+            for (Map.Entry<LocalDate, Long> entry : offsetsByDay.entrySet()) {
+                long offset = entry.getValue();
+                if (offset <= previous || offset < 1 || offset + DATE_LENGTH > length) {
+                    return false;
+                }
+                buffer.clear();
+                channel.read(buffer, offset - 1);
+                buffer.flip();
+                if (buffer.remaining() < DATE_LENGTH + 1 || buffer.get() != '\n') {
+                    return false;
+                }
+                String date = new String(buffer.array(), 1, DATE_LENGTH, StandardCharsets.US_ASCII);
+                if (!date.equals(entry.getKey().toString())) {
+                    return false;
+                }
+                previous = offset;
+            }
+            return true;
+        }
+    }
+
+    private void writeIndex() {
+        StringBuilder content = new StringBuilder(offsetsByDay.size() * 24);
+        for (Map.Entry<LocalDate, Long> entry : offsetsByDay.entrySet()) {
+            content.append(entry.getKey()).append(',').append(entry.getValue()).append('\n');
+        }
+        if (unordered) {
+            content.append(UNORDERED_MARKER).append('\n');
+        }
+        try {
+            FileUtils.writeDerivedTextFile(indexFile, content.toString());
+        } catch (IOException e) {
+            SimpleLogger.logError("Error writing sales index " + indexFile, e);
+        }
+    }
+}
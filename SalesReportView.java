@@ -1,16 +1,21 @@
 package view;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import controller.SalesController;
-import model.Sale;
+import model.Money;
+import model.SaleRecord;
 
 public class SalesReportView extends JFrame {
     private SalesController controller;
@@ -23,11 +28,16 @@ public class SalesReportView extends JFrame {
     private JButton filterButton;
     private JButton refreshButton;
     private JButton exportButton;
+    private JCheckBox gzipCheckBox;
+    private JButton exportBillsButton;
+    private JButton receiptButton;
+    private JTextField billNumberField;
+    private JButton findBillButton;
     private JButton backButton;
     
     // Table components
     private JTable salesTable;
-    private DefaultTableModel salesTableModel;
+    private SalesTableModel salesTableModel;
     
     // Summary labels
     private JLabel salesCountLabel;
@@ -35,7 +45,7 @@ public class SalesReportView extends JFrame {
     private JLabel allTimeTotalLabel;
     
     // Data
-    private List<Sale> currentSales;
+    private List<SaleRecord> currentSales;
     private LocalDate currentFromDate;
     private LocalDate currentToDate;
     
@@ -59,16 +69,15 @@ public class SalesReportView extends JFrame {
         filterButton = new JButton("Filter");
         refreshButton = new JButton("Refresh");
         exportButton = new JButton("Export Report");
+        gzipCheckBox = new JCheckBox("Compress (gzip)");
+        exportBillsButton = new JButton("Export Bills");
+        receiptButton = new JButton("View Receipt");
+        billNumberField = new JTextField(10);
+        findBillButton = new JButton("Find Bill");
         backButton = new JButton("Back to Dashboard");
         
         // Table setup
-        String[] columns = {"Date", "Time", "Total", "Discount", "Net Total"};
-        salesTableModel = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        salesTableModel = new SalesTableModel();
         salesTable = new JTable(salesTableModel);
         salesTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         
@@ -121,6 +130,9 @@ public class SalesReportView extends JFrame {
         buttonPanel.add(filterButton);
         buttonPanel.add(refreshButton);
         buttonPanel.add(exportButton);
+        buttonPanel.add(gzipCheckBox);
+        buttonPanel.add(exportBillsButton);
+        buttonPanel.add(receiptButton);
         
         gbc.gridx = 0;
         gbc.gridy = 2;
@@ -128,8 +140,16 @@ public class SalesReportView extends JFrame {
         gbc.fill = GridBagConstraints.HORIZONTAL;
         controlPanel.add(buttonPanel, gbc);
         
-        // Back button
+        // Bill lookup
+        JPanel findPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        findPanel.add(new JLabel("Bill No.:"));
+        findPanel.add(billNumberField);
+        findPanel.add(findBillButton);
         gbc.gridy = 3;
+        controlPanel.add(findPanel, gbc);
+        
+        // Back button
+        gbc.gridy = 4;
         controlPanel.add(backButton, gbc);
         
         mainPanel.add(controlPanel, BorderLayout.NORTH);
@@ -155,11 +175,25 @@ public class SalesReportView extends JFrame {
         filterButton.addActionListener(e -> handleFilter());
         refreshButton.addActionListener(e -> handleRefresh());
         exportButton.addActionListener(e -> handleExport());
+        exportBillsButton.addActionListener(e -> handleExportBills());
+        receiptButton.addActionListener(e -> handleViewReceipt());
+        findBillButton.addActionListener(e -> handleFindBill());
+        billNumberField.addActionListener(e -> handleFindBill());
         backButton.addActionListener(e -> handleBack());
         
         // Enter key support for date fields
         fromDateField.addActionListener(e -> handleFilter());
         toDateField.addActionListener(e -> handleFilter());
+        
+        // Double-click a sale to see its receipt
+        salesTable.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && salesTable.getSelectedRow() >= 0) {
+                    handleViewReceipt();
+                }
+            }
+        });
     }
 
     private void configureFrame() {
@@ -243,24 +277,138 @@ public class SalesReportView extends JFrame {
             }
         }
         
-        try {
-            controller.exportReport(currentSales, currentFromDate, currentToDate);
+        // Stream the report from the sales files on a background thread, showing progress
+        LocalDate from = currentFromDate;
+        LocalDate to = currentToDate;
+        boolean gzip = gzipCheckBox.isSelected();
+        ProgressMonitor monitor = new ProgressMonitor(this, "Exporting sales report...", null, 0, 100);
+        monitor.setMillisToDecideToPopup(200);
+        exportButton.setEnabled(false);
+        
+        SwingWorker<Path, int[]> worker = new SwingWorker<Path, int[]>() {
+            private int recordCount;
+            // The monitor may only be read on the EDT, so process() copies its state here
+            private volatile boolean cancelled;
+            
+            @Override
+            protected Path doInBackground() throws Exception {
+                return controller.exportReport(from, to, gzip, (written, total) -> {
+                    recordCount = written;
+                    publish(new int[]{written, total});
+                    return !cancelled;
+                });
+            }
             
-            String fileName = String.format("report_%s_to_%s.csv", 
-                    currentFromDate.format(DATE_FORMATTER), 
-                    currentToDate.format(DATE_FORMATTER));
+            @Override
+            protected void process(List<int[]> progress) {
+                if (monitor.isCanceled()) {
+                    cancelled = true;
+                    return;
+                }
+                int[] latest = progress.get(progress.size() - 1);
+                monitor.setMaximum(Math.max(latest[1], 1));
+                monitor.setProgress(latest[0]);
+                monitor.setNote(String.format("%d of %d sales", latest[0], latest[1]));
+            }
             
-            JOptionPane.showMessageDialog(this, 
-                    String.format("Report exported successfully!\nFile: reports/%s\nRecords: %d", 
-                            fileName, currentSales.size()), 
-                    "Export Success", 
-                    JOptionPane.INFORMATION_MESSAGE);
-                    
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "Error exporting report: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            @Override
+            protected void done() {
+                monitor.close();
+                exportButton.setEnabled(true);
+                try {
+                    Path file = get();
+                    if (file == null) {
+                        // Cancelled from the progress monitor; nothing was written
+                        return;
+                    }
+                    JOptionPane.showMessageDialog(SalesReportView.this, 
+                            String.format("Report exported successfully!\nFile: reports/%s\nRecords: %d", 
+                                    file.getFileName(), recordCount), 
+                            "Export Success", 
+                            JOptionPane.INFORMATION_MESSAGE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(SalesReportView.this, "Error exporting report: " + e.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    private void handleExportBills() {
+        LocalDate from = currentFromDate;
+        LocalDate to = currentToDate;
+        exportBillsButton.setEnabled(false);
+        
+        SwingWorker<Path, Void> worker = new SwingWorker<Path, Void>() {
+            @Override
+            protected Path doInBackground() throws Exception {
+                return controller.exportBills(from, to);
+            }
+            
+            @Override
+            protected void done() {
+                exportBillsButton.setEnabled(true);
+                try {
+                    Path folder = get();
+                    JOptionPane.showMessageDialog(SalesReportView.this, 
+                            String.format("Bills exported successfully!\nFolder: reports/%s", folder.getFileName()), 
+                            "Export Success", 
+                            JOptionPane.INFORMATION_MESSAGE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(SalesReportView.this, "Error exporting bills: " + e.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    private void handleViewReceipt() {
+        int row = salesTable.getSelectedRow();
+        if (row < 0) {
+            JOptionPane.showMessageDialog(this, "Please select a sale first!", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        SaleRecord sale = salesTableModel.getSaleAt(salesTable.convertRowIndexToModel(row));
+        
+        try {
+            showReceipt(controller.getReceipt(sale), "No archived bill was found for this sale.");
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Error reading receipt: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
 
+    private void handleFindBill() {
+        long billNumber;
+        try {
+            billNumber = Long.parseLong(billNumberField.getText().trim());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Please enter a valid bill number!", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        try {
+            showReceipt(controller.getReceipt(billNumber), "No bill was found with number " + billNumber + ".");
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Error reading receipt: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private void showReceipt(String receipt, String notFoundMessage) {
+        if (receipt == null) {
+            JOptionPane.showMessageDialog(this, notFoundMessage, "Info", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        
+        JTextArea receiptArea = new JTextArea(receipt);
+        receiptArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        receiptArea.setEditable(false);
+        JOptionPane.showMessageDialog(this, new JScrollPane(receiptArea), "Receipt", JOptionPane.PLAIN_MESSAGE);
+    }
+
     private void handleBack() {
         dispose();
         DashboardView dashboard = new DashboardView();
@@ -268,27 +416,17 @@ public class SalesReportView extends JFrame {
     }
 
     private void updateTable() {
-        salesTableModel.setRowCount(0);
-        
-        for (Sale sale : currentSales) {
-            salesTableModel.addRow(new Object[]{
-                    sale.getDate().format(DATE_FORMATTER),
-                    sale.getTime().toString(),
-                    String.format("%.2f", sale.getTotal()),
-                    String.format("%.2f", sale.getDiscount()),
-                    String.format("%.2f", sale.getNetTotal())
-            });
-        }
+        salesTableModel.setSales(currentSales);
     }
 
     private void updateSummary() {
         int count = currentSales.size();
-        double rangeTotal = controller.computeCumulativeTotal(currentSales);
-        double allTimeTotal = controller.computeAllTimeTotal();
+        Money rangeTotal = controller.getSummary(currentFromDate, currentToDate).getNet();
+        Money allTimeTotal = controller.computeAllTimeTotal();
         
         salesCountLabel.setText(String.format("Displayed Sales Count: %d", count));
-        rangeTotalLabel.setText(String.format("Total for range: ₹%.2f", rangeTotal));
-        allTimeTotalLabel.setText(String.format("Cumulative Total (all time): ₹%.2f", allTimeTotal));
+        rangeTotalLabel.setText("Total for range: ₹" + rangeTotal);
+        allTimeTotalLabel.setText("Cumulative Total (all time): ₹" + allTimeTotal);
     }
 
     public void showWindow() {
@@ -0,0 +1,186 @@
+package controller;
+
+import model.Money;
+import model.Sale;
+import model.SalesSummary;
+import util.CsvParser;
+import util.FileUtils;
+import util.SimpleLogger;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Daily totals of one sales partition, persisted beside it so that reports over any span
+ * are answered from at most one line per day instead of from the sales themselves.
+ *
+ * The file records how many bytes of the partition it covers, then one line per day:
+ * <pre>
+ *   #length,bytes
+ *   yyyy-MM-dd,count,gross,discount,net
+ * </pre>
+ * Rows appended to the partition past the covered length are folded in on load, so the file
+ * is only rewritten every few appends and at shutdown rather than on each one. A rollup that
+ * covers more than the partition holds, or cannot be read, is rebuilt from the partition.
+ */
+public class SalesRollup {
+    private static final String LENGTH_PREFIX = "#length,";
+    private static final int WRITE_INTERVAL = 32;
+
+    private final Path rollupFile;
+    private final Path salesFile;
+    private final NavigableMap<LocalDate, SalesSummary> summariesByDay;
+    private SalesSummary total;
+    private long coveredLength;
+    private long writtenLength;
+    private int unwrittenAppends;
+    private boolean loaded;
+
+    public SalesRollup(Path rollupFile, Path salesFile) {
+        this.rollupFile = rollupFile;
+        this.salesFile = salesFile;
+        this.summariesByDay = new TreeMap<>();
+        this.total = new SalesSummary();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Reads the rollup and brings it up to date with the sales partition
+     */
+    public void load() throws IOException {
+        clear();
+        loaded = true;
+        long salesLength = Files.exists(salesFile) ? Files.size(salesFile) : 0;
+        if (salesLength == 0) {
+            Files.deleteIfExists(rollupFile);
+            return;
+        }
+
+        if (!readRollup() || coveredLength > salesLength) {
+            SimpleLogger.logInfo("Rebuilding sales rollup " + rollupFile);
+            clear();
+        }
+        writtenLength = coveredLength;
+        if (coveredLength < salesLength) {
+            coveredLength = CsvParser.parseFrom(salesFile, coveredLength, coveredLength == 0, row -> {
+                try {
+                    if (row.getFieldCount() >= 4) {
+                        LocalDateTime timestamp = row.getDateTime(0);
+                        add(new Sale(timestamp, row.getMinorUnits(1), row.getMinorUnits(2), row.getMinorUnits(3)));
+                    }
+                } catch (DateTimeException | NumberFormatException e) {
+                    // Unparseable rows are reported when the sales are read
+                }
+            });
+            write();
+        }
+    }
+
+    /**
+     * Adds a sale just appended to the partition, which is now the given number of bytes long,
+     * writing the rollup if enough appends have gone unwritten
+     */
+    public void recordAppend(Sale sale, long salesLength) {
+        add(sale);
+        coveredLength = salesLength;
+        if (++unwrittenAppends >= WRITE_INTERVAL) {
+            write();
+        }
+    }
+
+    /**
+     * Writes the rollup if it covers appends the file does not
+     */
+    public void flush() {
+        if (loaded) {
+            write();
+        }
+    }
+
+    /**
+     * Gets the totals of every sale in the partition
+     */
+    public SalesSummary getTotal() {
+        return total;
+    }
+
+    /**
+     * Gets the totals of each day with sales, between two dates inclusive
+     */
+    public SortedMap<LocalDate, SalesSummary> getDays(LocalDate from, LocalDate to) {
+        return summariesByDay.subMap(from, true, to, true);
+    }
+
+    private void add(Sale sale) {
+        summariesByDay.computeIfAbsent(sale.getDate(), d -> new SalesSummary()).add(sale);
+        total.add(sale);
+    }
+
+    private void clear() {
+        summariesByDay.clear();
+        total = new SalesSummary();
+        coveredLength = 0;
+        writtenLength = 0;
+        unwrittenAppends = 0;
+    }
+
+    private boolean readRollup() {
+        if (!Files.exists(rollupFile)) {
+            return false;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(rollupFile, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null || !header.startsWith(LENGTH_PREFIX)) {
+                return false;
+            }
+            coveredLength = Long.parseLong(header.substring(LENGTH_PREFIX.length()).trim());
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] parts = line.split(",");
+                SalesSummary summary = new SalesSummary(Integer.parseInt(parts[1]),
+                        Money.parseMinorUnits(parts[2]), Money.parseMinorUnits(parts[3]), Money.parseMinorUnits(parts[4]));
+                summariesByDay.put(LocalDate.parse(parts[0]), summary);
+                total.add(summary);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            SimpleLogger.logWarning("Could not read sales rollup " + rollupFile + ": " + e);
+            return false;
+        }
+    }
+
+    private void write() {
+        unwrittenAppends = 0;
+        if (coveredLength == writtenLength) {
+            return;
+        }
+        StringBuilder content = new StringBuilder(32 + summariesByDay.size() * 64);
+        content.append(LENGTH_PREFIX).append(coveredLength).append('\n');
+        for (Map.Entry<LocalDate, SalesSummary> entry : summariesByDay.entrySet()) {
+            SalesSummary summary = entry.getValue();
+            content.append(entry.getKey()).append(',').append(summary.getCount()).append(',');
+            Money.appendTo(content, summary.getGrossCents()).append(',');
+            Money.appendTo(content, summary.getDiscountCents()).append(',');
+            Money.appendTo(content, summary.getNetCents()).append('\n');
+        }
+        try {
+            FileUtils.writeDerivedTextFile(rollupFile, content.toString());
+            writtenLength = coveredLength;
+        } catch (IOException e) {
+            // The next load folds in whatever the stale file does not cover
+            SimpleLogger.logError("Error writing sales rollup " + rollupFile, e);
+        }
+    }
+}
@@ -0,0 +1,547 @@
+package controller;
+
+import model.Money;
+import model.Sale;
+import model.SaleRecord;
+import model.SalesTable;
+import model.SalesSummary;
+import util.CsvParser;
+import util.FileUtils;
+import util.SimpleLogger;
+import util.TimestampCodec;
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Process-wide store of recorded sales, partitioned by month.
+ *
+ * Sales are written to one file per calendar month under data/sales/, named
+ * sales_YYYY-MM.csv. A date-range query only opens the partitions for the months it
+ * overlaps. A partition the query covers completely is read and kept in memory in time
+ * order; afterwards only the bytes appended to it since the last read are parsed. Where
+ * the query covers only part of a month that is not in memory, the partition's day index
+ * (sales_YYYY-MM.idx) gives the byte range holding those days and only that range is read.
+ * Totals are answered from each partition's daily rollup (sales_YYYY-MM.sum) instead, and
+ * the all-time totals from a running aggregate (alltime.sum) checked against the partitions
+ * on startup.
+ * Each row ends with the number of the bill the sale was made on; rows recorded before bills
+ * were numbered have no such column.
+ * A legacy single data/sales.csv is split into partitions on first start.
+ */
+public class SalesStore {
+    private static final String SALES_DIR = "data/sales";
+    private static final String LEGACY_SALES_CSV = "data/sales.csv";
+    private static final String CSV_HEADER = "date,total,discount,netTotal,billId";
+    private static final String PARTITION_PREFIX = "sales_";
+    private static final String PARTITION_SUFFIX = ".csv";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String ROLLUP_SUFFIX = ".sum";
+    private static final String AGGREGATE_FILE = "alltime.sum";
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static SalesStore instance;
+
+    private final Path directory;
+    private final NavigableMap<YearMonth, Partition> partitions;
+    private final SalesAggregate aggregate;
+
+    /**
+     * Sales of one month, loaded on demand
+     */
+    private static class Partition {
+        private final YearMonth month;
+        private final Path file;
+        private final SalesDayIndex index;
+        private final SalesRollup rollup;
+        private SalesTable sales;
+        private long readOffset;
+        private boolean loaded;
+
+        private Partition(YearMonth month, Path file) {
+            this.month = month;
+            this.file = file;
+            String name = file.getFileName().toString();
+            String baseName = name.substring(0, name.length() - PARTITION_SUFFIX.length());
+            this.index = new SalesDayIndex(file.resolveSibling(baseName + INDEX_SUFFIX), file);
+            this.rollup = new SalesRollup(file.resolveSibling(baseName + ROLLUP_SUFFIX), file);
+            this.sales = new SalesTable();
+        }
+    }
+
+    private SalesStore(Path directory) {
+        this.directory = directory;
+        this.partitions = new TreeMap<>();
+        this.aggregate = new SalesAggregate(directory.resolve(AGGREGATE_FILE));
+        try {
+            Files.createDirectories(directory);
+            migrateLegacyFile(Paths.get(LEGACY_SALES_CSV));
+        } catch (IOException e) {
+            SimpleLogger.logError("Error preparing sales partitions", e);
+        }
+        scanPartitions();
+        checkAggregate();
+        SimpleLogger.logInfo("SalesStore initialized with " + partitions.size() + " monthly partitions");
+    }
+
+    /**
+     * Gets the shared sales store, migrating the legacy sales file on first use
+     */
+    public static synchronized SalesStore getInstance() {
+        if (instance == null) {
+            instance = new SalesStore(Paths.get(SALES_DIR));
+        }
+        return instance;
+    }
+
+    /**
+     * Appends a sale to the partition for its month
+     */
+    public synchronized void append(Sale sale) throws IOException {
+        YearMonth month = YearMonth.from(sale.getTimestamp());
+        Partition partition = partitions.computeIfAbsent(month, m -> new Partition(m, partitionFile(m)));
+        if (!partition.index.isLoaded()) {
+            partition.index.load();
+        }
+        if (!partition.rollup.isLoaded()) {
+            partition.rollup.load();
+        }
+
+        StringBuilder record = new StringBuilder(64);
+        long length = Files.exists(partition.file) ? Files.size(partition.file) : 0;
+        if (length == 0) {
+            record.append(CSV_HEADER).append('\n');
+        }
+        long offset = length + record.length();
+        appendRecord(record, sale);
+        FileUtils.safeAppendToFile(partition.file, record.toString());
+        partition.index.recordAppend(sale.getDate(), offset);
+        partition.rollup.recordAppend(sale, length + record.length());
+        aggregate.recordAppend(sale, month, length + record.length());
+    }
+
+    /**
+     * Checks whether a sale is recorded, looking from the start of its day to the end of its
+     * month's partition: by bill number if it has one, or else by exactly the same time and amounts
+     */
+    public synchronized boolean contains(Sale sale) throws IOException {
+        YearMonth month = YearMonth.from(sale.getTimestamp());
+        Partition partition = partitions.get(month);
+        if (partition == null || !Files.exists(partition.file)) {
+            return false;
+        }
+        if (!partition.index.isLoaded()) {
+            partition.index.load();
+        }
+        long start = partition.index.byteRange(sale.getDate(), sale.getDate())[0];
+        long epochSecond = TimestampCodec.toEpochSecond(sale.getTimestamp());
+        long billId = sale.getBillId();
+        boolean[] found = {false};
+        CsvParser.parseRange(partition.file, start, Long.MAX_VALUE, start == 0, row -> {
+            try {
+                if (found[0]) {
+                    return;
+                }
+                if (billId > 0) {
+                    found[0] = row.getFieldCount() >= 5 && row.getLong(4) == billId;
+                } else if (row.getFieldCount() >= 4
+                        && row.getEpochSecond(0) == epochSecond
+                        && row.getMinorUnits(1) == sale.getTotalCents()
+                        && row.getMinorUnits(2) == sale.getDiscountBasisPoints()
+                        && row.getMinorUnits(3) == sale.getNetTotalCents()) {
+                    found[0] = true;
+                }
+            } catch (DateTimeException | NumberFormatException e) {
+                // Unparseable rows are reported when the sales are read
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * Writes the rollups and all-time totals that lag behind the partitions, if the store was started
+     */
+    public static synchronized void shutdown() {
+        if (instance == null) {
+            return;
+        }
+        instance.flush();
+        instance = null;
+    }
+
+    private synchronized void flush() {
+        for (Partition partition : partitions.values()) {
+            partition.rollup.flush();
+        }
+        aggregate.flush();
+    }
+
+    /**
+     * Gets every sale, most recent first
+     */
+    public synchronized List<SaleRecord> getAll() {
+        List<List<SaleRecord>> parts = new ArrayList<>();
+        for (Partition partition : partitions.descendingMap().values()) {
+            refresh(partition);
+            parts.add(partition.sales.newestFirst(0, partition.sales.size()));
+        }
+        return SalesTable.concat(parts);
+    }
+
+    /**
+     * Gets the sales made between two dates inclusive, most recent first
+     */
+    public synchronized List<SaleRecord> getBetween(LocalDate from, LocalDate to) {
+        List<List<SaleRecord>> parts = new ArrayList<>();
+        if (from.isAfter(to)) {
+            return SalesTable.concat(parts);
+        }
+        LocalDateTime start = from.atStartOfDay();
+        LocalDateTime end = to.plusDays(1).atStartOfDay();
+        for (Partition partition : overlapping(from, to)) {
+            boolean wholeMonth = !from.isAfter(partition.month.atDay(1)) && !to.isBefore(partition.month.atEndOfMonth());
+            if (partition.loaded || wholeMonth) {
+                refresh(partition);
+                int first = partition.sales.lowerBound(start);
+                int last = partition.sales.lowerBound(end);
+                parts.add(partition.sales.newestFirst(first, last));
+            } else {
+                parts.add(readRange(partition, from, to));
+            }
+        }
+        return SalesTable.concat(parts);
+    }
+
+    /**
+     * Passes each sale made between two dates inclusive to the consumer in the order they were
+     * recorded, which is oldest first unless the clock was set back, reading the partitions
+     * directly so nothing is held in memory. The store is only locked while the byte ranges are
+     * looked up, so sales can still be recorded during a long read; sales recorded after the
+     * call starts are not included.
+     */
+    public void streamBetween(LocalDate from, LocalDate to, Consumer<Sale> consumer) throws IOException {
+        List<Path> files = new ArrayList<>();
+        List<long[]> ranges = new ArrayList<>();
+        synchronized (this) {
+            if (from.isAfter(to)) {
+                return;
+            }
+            for (Partition partition : partitions.subMap(YearMonth.from(from), true, YearMonth.from(to), true).values()) {
+                if (!partition.index.isLoaded()) {
+                    partition.index.load();
+                }
+                long[] range = partition.index.byteRange(from, to);
+                range[1] = Math.min(range[1], FileUtils.getFileSize(partition.file));
+                if (range[0] < range[1]) {
+                    files.add(partition.file);
+                    ranges.add(range);
+                }
+            }
+        }
+
+        for (int i = 0; i < files.size(); i++) {
+            CsvParser.parseRange(files.get(i), ranges.get(i)[0], ranges.get(i)[1], ranges.get(i)[0] == 0, row -> {
+                Sale sale = parseRow(row);
+                if (sale != null && !sale.getDate().isBefore(from) && !sale.getDate().isAfter(to)) {
+                    consumer.accept(sale);
+                }
+            });
+        }
+    }
+
+    /**
+     * Reads only the rows of a partition dated within a range, using its day index.
+     * Returns them most recent first.
+     */
+    private List<SaleRecord> readRange(Partition partition, LocalDate from, LocalDate to) {
+        SalesTable sales = new SalesTable();
+        try {
+            if (!partition.index.isLoaded()) {
+                partition.index.load();
+            }
+            long[] range = partition.index.byteRange(from, to);
+            if (range[0] < range[1]) {
+                CsvParser.parseRange(partition.file, range[0], range[1], range[0] == 0, row -> addRow(sales, row));
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading sales: " + e.getMessage());
+        }
+        sales.sortByTime();
+        int first = sales.lowerBound(from.atStartOfDay());
+        int last = sales.lowerBound(to.plusDays(1).atStartOfDay());
+        return sales.newestFirst(first, last);
+    }
+
+    /**
+     * Gets the totals of the sales made between two dates inclusive, from the daily rollups
+     */
+    public synchronized SalesSummary getSummary(LocalDate from, LocalDate to) {
+        SalesSummary summary = new SalesSummary();
+        for (SalesSummary day : getDailySummaries(from, to).values()) {
+            summary.add(day);
+        }
+        return summary;
+    }
+
+    /**
+     * Gets the totals of each day with sales between two dates inclusive, in date order
+     */
+    public synchronized NavigableMap<LocalDate, SalesSummary> getDailySummaries(LocalDate from, LocalDate to) {
+        NavigableMap<LocalDate, SalesSummary> summaries = new TreeMap<>();
+        if (from.isAfter(to)) {
+            return summaries;
+        }
+        for (Partition partition : overlapping(from, to)) {
+            for (Map.Entry<LocalDate, SalesSummary> day : loadRollup(partition).getDays(from, to).entrySet()) {
+                summaries.put(day.getKey(), new SalesSummary(day.getValue()));
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Gets the totals of each month with sales between two months inclusive, in month order
+     */
+    public synchronized NavigableMap<YearMonth, SalesSummary> getMonthlySummaries(YearMonth from, YearMonth to) {
+        NavigableMap<YearMonth, SalesSummary> summaries = new TreeMap<>();
+        for (Partition partition : partitions.subMap(from, true, to, true).values()) {
+            SalesSummary total = loadRollup(partition).getTotal();
+            if (total.getCount() > 0) {
+                summaries.put(partition.month, new SalesSummary(total));
+            }
+        }
+        return summaries;
+    }
+
+    private SalesRollup loadRollup(Partition partition) {
+        try {
+            // Already up to date when loaded, since every append in this process goes through it
+            if (!partition.rollup.isLoaded()) {
+                partition.rollup.load();
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading sales rollup: " + e.getMessage());
+        }
+        return partition.rollup;
+    }
+
+    /**
+     * Gets the totals of every sale recorded, without reading any sales
+     */
+    public synchronized SalesSummary getAllTimeSummary() {
+        return aggregate.getTotal();
+    }
+
+    /**
+     * Loads the all-time totals, recomputing them from the monthly rollups if they do not
+     * cover the partitions currently on disk
+     */
+    private void checkAggregate() {
+        Map<YearMonth, Long> lengths = new TreeMap<>();
+        for (Partition partition : partitions.values()) {
+            lengths.put(partition.month, FileUtils.getFileSize(partition.file));
+        }
+        if (aggregate.load(lengths)) {
+            return;
+        }
+
+        SimpleLogger.logInfo("Recomputing all-time sales totals from monthly rollups");
+        SalesSummary total = new SalesSummary();
+        for (Partition partition : partitions.values()) {
+            total.add(loadRollup(partition).getTotal());
+        }
+        aggregate.rebuild(total, lengths);
+    }
+
+    /**
+     * Partitions for the months overlapping a date range, newest first
+     */
+    private Collection<Partition> overlapping(LocalDate from, LocalDate to) {
+        return partitions.subMap(YearMonth.from(from), true, YearMonth.from(to), true)
+                .descendingMap().values();
+    }
+
+    private Path partitionFile(YearMonth month) {
+        return partitionFile(month, PARTITION_SUFFIX);
+    }
+
+    private Path partitionFile(YearMonth month, String suffix) {
+        return directory.resolve(PARTITION_PREFIX + month.format(MONTH_FORMATTER) + suffix);
+    }
+
+    private void scanPartitions() {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PARTITION_PREFIX + "*" + PARTITION_SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                String month = name.substring(PARTITION_PREFIX.length(), name.length() - PARTITION_SUFFIX.length());
+                try {
+                    YearMonth yearMonth = YearMonth.parse(month, MONTH_FORMATTER);
+                    truncateIncompleteRow(file);
+                    partitions.put(yearMonth, new Partition(yearMonth, file));
+                } catch (DateTimeParseException e) {
+                    SimpleLogger.logWarning("Ignoring unexpected file in sales directory: " + name);
+                }
+            }
+        } catch (IOException e) {
+            SimpleLogger.logError("Error listing sales partitions", e);
+        }
+    }
+
+    /**
+     * Cuts off a row left half-written by a crash, before anything reads the partition or
+     * appends to it
+     */
+    private static void truncateIncompleteRow(Path file) {
+        try {
+            if (FileUtils.truncateIncompleteLine(file)) {
+                SimpleLogger.logWarning("Discarding incomplete last line of sales partition " + file);
+            }
+        } catch (IOException e) {
+            SimpleLogger.logError("Error checking sales partition " + file, e);
+        }
+    }
+
+    /**
+     * Reads a partition on first use, or just the rows appended since it was last read.
+     * Reloads it if the file has shrunk, which means it was replaced. Only complete lines are
+     * read; a row still being written is picked up by the next refresh.
+     */
+    private void refresh(Partition partition) {
+        try {
+            long size = Files.exists(partition.file) ? Files.size(partition.file) : 0;
+            if (!partition.loaded || size < partition.readOffset) {
+                long length = FileUtils.getCompleteLength(partition.file);
+                partition.sales = length > 0 ? readSales(partition.file, length) : new SalesTable();
+                partition.readOffset = length;
+                partition.loaded = true;
+            } else if (size > partition.readOffset) {
+                partition.readOffset = CsvParser.parseFrom(partition.file, partition.readOffset,
+                        partition.readOffset == 0, row -> addRow(partition.sales, row));
+                partition.sales.sortByTime();
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading sales: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sales parsed from one chunk of a file
+     */
+    private static class SaleChunk {
+        private final SalesTable sales = new SalesTable(4096);
+    }
+
+    /**
+     * Reads every sale in the first length bytes of a file in time order. Large files are parsed
+     * in parallel chunks. Rows are appended in time order, so the table normally needs no
+     * sorting; otherwise it is sorted once at the end.
+     */
+    private static SalesTable readSales(Path file, long length) throws IOException {
+        List<SaleChunk> chunks = CsvParser.parseParallel(file, length, true, SaleChunk::new,
+                (chunk, row) -> addRow(chunk.sales, row));
+
+        int count = 0;
+        for (SaleChunk chunk : chunks) {
+            count += chunk.sales.size();
+        }
+        SalesTable sales = new SalesTable(count);
+        for (SaleChunk chunk : chunks) {
+            sales.addAll(chunk.sales);
+        }
+        sales.sortByTime();
+        return sales;
+    }
+
+    private static Sale parseRow(CsvParser.Row row) {
+        try {
+            if (row.getFieldCount() >= 4) {
+                LocalDateTime timestamp = row.getDateTime(0);
+                long totalCents = row.getMinorUnits(1);
+                long discountBasisPoints = row.getMinorUnits(2);
+                long netCents = row.getMinorUnits(3);
+                long billId = row.getFieldCount() >= 5 ? row.getLong(4) : 0;
+                return new Sale(billId, timestamp, totalCents, discountBasisPoints, netCents);
+            }
+        } catch (DateTimeException | NumberFormatException e) {
+            System.err.println("Error parsing sale line: " + row.getLine() + " - " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Adds a row to a table straight from the parsed fields; the caller sorts the table afterwards
+     */
+    private static void addRow(SalesTable sales, CsvParser.Row row) {
+        try {
+            if (row.getFieldCount() >= 4) {
+                sales.add(row.getEpochSecond(0), row.getMinorUnits(1), row.getMinorUnits(2), row.getMinorUnits(3),
+                        row.getFieldCount() >= 5 ? row.getLong(4) : 0);
+            }
+        } catch (DateTimeException | NumberFormatException e) {
+            System.err.println("Error parsing sale line: " + row.getLine() + " - " + e.getMessage());
+        }
+    }
+
+    private static StringBuilder appendRecord(StringBuilder record, Sale sale) {
+        return appendRecord(record, TimestampCodec.toEpochSecond(sale.getTimestamp()), sale.getTotalCents(),
+                sale.getDiscountBasisPoints(), sale.getNetTotalCents(), sale.getBillId());
+    }
+
+    private static StringBuilder appendRecord(StringBuilder record, long epochSecond, long totalCents,
+                                              long discountBasisPoints, long netTotalCents, long billId) {
+        TimestampCodec.appendTo(record, epochSecond).append(',');
+        Money.appendTo(record, totalCents).append(',');
+        Money.appendTo(record, discountBasisPoints).append(',');
+        Money.appendTo(record, netTotalCents);
+        if (billId > 0) {
+            record.append(',').append(billId);
+        }
+        return record.append('\n');
+    }
+
+    /**
+     * Splits a legacy single sales file into monthly partitions, then renames it out of the way.
+     * Partitions are written whole and atomically, so an interrupted migration is simply redone.
+     */
+    private void migrateLegacyFile(Path legacyFile) throws IOException {
+        if (!Files.exists(legacyFile)) {
+            return;
+        }
+
+        // The sales come back in time order, so each month is one run of rows
+        SalesTable sales = readSales(legacyFile, Long.MAX_VALUE);
+        int months = 0;
+        int start = 0;
+        while (start < sales.size()) {
+            YearMonth month = YearMonth.from(TimestampCodec.toLocalDate(sales.getEpochSecond(start)));
+            int end = start;
+            StringBuilder content = new StringBuilder(CSV_HEADER.length() + 1 + 48 * 1024);
+            content.append(CSV_HEADER).append('\n');
+            while (end < sales.size()) {
+                long epochSecond = sales.getEpochSecond(end);
+                if (!YearMonth.from(TimestampCodec.toLocalDate(epochSecond)).equals(month)) {
+                    break;
+                }
+                appendRecord(content, epochSecond, sales.getTotalCents(end), sales.getDiscountBasisPoints(end),
+                        sales.getNetTotalCents(end), sales.getBillId(end));
+                end++;
+            }
+            FileUtils.safeWriteTextFile(partitionFile(month), content.toString());
+            Files.deleteIfExists(partitionFile(month, INDEX_SUFFIX));
+            Files.deleteIfExists(partitionFile(month, ROLLUP_SUFFIX));
+            months++;
+            start = end;
+        }
+
+        Files.move(legacyFile, legacyFile.resolveSibling(legacyFile.getFileName() + ".migrated"),
+                StandardCopyOption.REPLACE_EXISTING);
+        SimpleLogger.logInfo("Migrated " + sales.size() + " sales from " + legacyFile + " into "
+                + months + " monthly partitions");
+    }
+}
@@ -0,0 +1,67 @@
+package model;
+
+/**
+ * Running totals over a set of sales: how many, and their gross, discount and net amounts
+ */
+public class SalesSummary {
+    private int count;
+    private long grossCents;
+    private long discountCents;
+    private long netCents;
+
+    public SalesSummary() {
+    }
+
+    public SalesSummary(int count, long grossCents, long discountCents, long netCents) {
+        this.count = count;
+        this.grossCents = grossCents;
+        this.discountCents = discountCents;
+        this.netCents = netCents;
+    }
+
+    public SalesSummary(SalesSummary other) {
+        this(other.count, other.grossCents, other.discountCents, other.netCents);
+    }
+
+    public void add(SaleRecord sale) {
+        count++;
+        grossCents += sale.getTotalCents();
+        discountCents += sale.getTotalCents() - sale.getNetTotalCents();
+        netCents += sale.getNetTotalCents();
+    }
+
+    public void add(SalesSummary other) {
+        count += other.count;
+        grossCents += other.grossCents;
+        discountCents += other.discountCents;
+        netCents += other.netCents;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getGrossCents() {
+        return grossCents;
+    }
+
+    public long getDiscountCents() {
+        return discountCents;
+    }
+
+    public long getNetCents() {
+        return netCents;
+    }
+
+    public Money getGross() {
+        return Money.ofCents(grossCents);
+    }
+
+    public Money getDiscount() {
+        return Money.ofCents(discountCents);
+    }
+
+    public Money getNet() {
+        return Money.ofCents(netCents);
+    }
+}
@@ -0,0 +1,403 @@
+package model;
+
+import util.TimestampCodec;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column-oriented table of sales held in parallel primitive arrays: the timestamp as local
+ * epoch seconds, and the total, discount, net total and bill number as longs. That is 40 bytes
+ * per sale, against several objects per sale for a list of Sale.
+ *
+ * Rows are exposed as {@link SaleRecord} cursors that hold only a slice and a row number and
+ * read each value from the columns when asked. A slice keeps the column arrays it was taken
+ * from, and the table never rewrites a filled slot in place (sorts and clears replace the
+ * arrays), so slices stay valid while rows are appended.
+ *
+ * Rows are appended in the order they are added. A table that received a row older than the
+ * one before it is out of order until {@link #sortByTime()} is called, which callers do once
+ * after adding a batch of rows; searches and views need the table in order.
+ */
+public class SalesTable {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private long[] epochSeconds;
+    private long[] totalCents;
+    private long[] discountBasisPoints;
+    private long[] netTotalCents;
+    private long[] billIds;
+    private int size;
+    private boolean ordered = true;
+
+    public SalesTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public SalesTable(int capacity) {
+        allocate(Math.max(capacity, 1));
+    }
+
+    private void allocate(int capacity) {
+        epochSeconds = new long[capacity];
+        totalCents = new long[capacity];
+        discountBasisPoints = new long[capacity];
+        netTotalCents = new long[capacity];
+        billIds = new long[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        allocate(INITIAL_CAPACITY);
+        size = 0;
+        ordered = true;
+    }
+
+    /**
+     * Appends a sale; the table is out of order afterwards if it is older than the last one
+     */
+    public void add(LocalDateTime timestamp, long total, long discount, long netTotal) {
+        add(TimestampCodec.toEpochSecond(timestamp), total, discount, netTotal, 0);
+    }
+
+    public void add(long epochSecond, long total, long discount, long netTotal, long billId) {
+        if (size > 0 && epochSecond < epochSeconds[size - 1]) {
+            ordered = false;
+        }
+        if (size == epochSeconds.length) {
+            grow(size * 2);
+        }
+        set(size++, epochSecond, total, discount, netTotal, billId);
+    }
+
+    /**
+     * Appends every row of another table, in order
+     */
+    public void addAll(SalesTable other) {
+        if (!other.ordered || (size > 0 && other.size > 0 && other.epochSeconds[0] < epochSeconds[size - 1])) {
+            ordered = false;
+        }
+        if (size + other.size > epochSeconds.length) {
+            grow(Math.max(size + other.size, size * 2));
+        }
+        System.arraycopy(other.epochSeconds, 0, epochSeconds, size, other.size);
+        System.arraycopy(other.totalCents, 0, totalCents, size, other.size);
+        System.arraycopy(other.discountBasisPoints, 0, discountBasisPoints, size, other.size);
+        System.arraycopy(other.netTotalCents, 0, netTotalCents, size, other.size);
+        System.arraycopy(other.billIds, 0, billIds, size, other.size);
+        size += other.size;
+    }
+
+    /**
+     * Checks whether the rows are in time order
+     */
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * Sorts the rows into time order, keeping rows with the same timestamp in their current order.
+     * Does nothing if they already are.
+     */
+    public void sortByTime() {
+        if (ordered) {
+            return;
+        }
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        mergeSort(order, new int[size], 0, size);
+
+        long[] oldSeconds = epochSeconds;
+        long[] oldTotals = totalCents;
+        long[] oldDiscounts = discountBasisPoints;
+        long[] oldNets = netTotalCents;
+        long[] oldBillIds = billIds;
+        allocate(Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            int from = order[i];
+            set(i, oldSeconds[from], oldTotals[from], oldDiscounts[from], oldNets[from], oldBillIds[from]);
+        }
+        ordered = true;
+    }
+
+    /**
+     * Stable merge sort of row numbers by timestamp. Runs that are already in order are not
+     * merged, so a table with a few late rows sorts in close to linear time.
+     */
+    private void mergeSort(int[] order, int[] scratch, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(order, scratch, from, middle);
+        mergeSort(order, scratch, middle, to);
+        if (epochSeconds[order[middle - 1]] <= epochSeconds[order[middle]]) {
+            return;
+        }
+        System.arraycopy(order, from, scratch, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && epochSeconds[scratch[left]] <= epochSeconds[scratch[right]])) {
+                order[i] = scratch[left++];
+            } else {
+                order[i] = scratch[right++];
+            }
+        }
+    }
+
+    private void set(int index, long epochSecond, long total, long discount, long netTotal, long billId) {
+        epochSeconds[index] = epochSecond;
+        totalCents[index] = total;
+        discountBasisPoints[index] = discount;
+        netTotalCents[index] = netTotal;
+        billIds[index] = billId;
+    }
+
+    private void grow(int capacity) {
+        epochSeconds = Arrays.copyOf(epochSeconds, capacity);
+        totalCents = Arrays.copyOf(totalCents, capacity);
+        discountBasisPoints = Arrays.copyOf(discountBasisPoints, capacity);
+        netTotalCents = Arrays.copyOf(netTotalCents, capacity);
+        billIds = Arrays.copyOf(billIds, capacity);
+    }
+
+    public long getEpochSecond(int index) {
+        return epochSeconds[index];
+    }
+
+    public long getTotalCents(int index) {
+        return totalCents[index];
+    }
+
+    public long getDiscountBasisPoints(int index) {
+        return discountBasisPoints[index];
+    }
+
+    public long getNetTotalCents(int index) {
+        return netTotalCents[index];
+    }
+
+    public long getBillId(int index) {
+        return billIds[index];
+    }
+
+    /**
+     * Index of the first row at or after the given time; the table must be in order
+     */
+    public int lowerBound(LocalDateTime time) {
+        long epochSecond = TimestampCodec.toEpochSecond(time);
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epochSeconds[mid] < epochSecond) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets a read-only view of rows start (inclusive) to end (exclusive), most recent first
+     */
+    public List<SaleRecord> newestFirst(int start, int end) {
+        return new Slice(epochSeconds, totalCents, discountBasisPoints, netTotalCents, billIds, start, end);
+    }
+
+    /**
+     * Joins several lists into one read-only view without copying them
+     */
+    public static List<SaleRecord> concat(List<List<SaleRecord>> parts) {
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        return new Concatenation(parts);
+    }
+
+    /**
+     * Sums the net totals of a list of sales, reading the columns directly when the list is
+     * a view of a sales table
+     */
+    public static long sumNetTotalCents(List<? extends SaleRecord> sales) {
+        if (sales instanceof Slice) {
+            Slice slice = (Slice) sales;
+            long cents = 0;
+            for (int i = slice.start; i < slice.end; i++) {
+                cents += slice.netTotalCents[i];
+            }
+            return cents;
+        }
+        if (sales instanceof Concatenation) {
+            long cents = 0;
+            for (List<SaleRecord> part : ((Concatenation) sales).parts) {
+                cents += sumNetTotalCents(part);
+            }
+            return cents;
+        }
+        long cents = 0;
+        for (SaleRecord sale : sales) {
+            cents += sale.getNetTotalCents();
+        }
+        return cents;
+    }
+
+    /**
+     * Rows of a table in reverse order, read from the column arrays captured when it was made
+     */
+    private static class Slice extends AbstractList<SaleRecord> {
+        private final long[] epochSeconds;
+        private final long[] totalCents;
+        private final long[] discountBasisPoints;
+        private final long[] netTotalCents;
+        private final long[] billIds;
+        private final int start;
+        private final int end;
+
+        private Slice(long[] epochSeconds, long[] totalCents, long[] discountBasisPoints, long[] netTotalCents,
+                      long[] billIds, int start, int end) {
+            this.epochSeconds = epochSeconds;
+            this.totalCents = totalCents;
+            this.discountBasisPoints = discountBasisPoints;
+            this.netTotalCents = netTotalCents;
+            this.billIds = billIds;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public SaleRecord get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            return new Row(this, end - 1 - index);
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+
+    private static class Concatenation extends AbstractList<SaleRecord> {
+        private final List<List<SaleRecord>> parts;
+        private final int size;
+
+        private Concatenation(List<List<SaleRecord>> parts) {
+            this.parts = parts;
+            int total = 0;
+            for (List<SaleRecord> part : parts) {
+                total += part.size();
+            }
+            this.size = total;
+        }
+
+        @Override
+        public SaleRecord get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            for (List<SaleRecord> part : parts) {
+                if (index < part.size()) {
+                    return part.get(index);
+                }
+                index -= part.size();
+            }
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Cursor on one row of a slice; every value is read from the slice's columns when asked for
+     */
+    private static final class Row implements SaleRecord {
+        private final Slice slice;
+        private final int row;
+
+        private Row(Slice slice, int row) {
+            this.slice = slice;
+            this.row = row;
+        }
+
+        @Override
+        public long getBillId() {
+            return slice.billIds[row];
+        }
+
+        @Override
+        public LocalDate getDate() {
+            return TimestampCodec.toLocalDate(slice.epochSeconds[row]);
+        }
+
+        @Override
+        public LocalTime getTime() {
+            return TimestampCodec.toLocalTime(slice.epochSeconds[row]);
+        }
+
+        @Override
+        public LocalDateTime getTimestamp() {
+            return TimestampCodec.toLocalDateTime(slice.epochSeconds[row]);
+        }
+
+        @Override
+        public Money getTotal() {
+            return Money.ofCents(slice.totalCents[row]);
+        }
+
+        @Override
+        public long getTotalCents() {
+            return slice.totalCents[row];
+        }
+
+        @Override
+        public long getDiscountBasisPoints() {
+            return slice.discountBasisPoints[row];
+        }
+
+        @Override
+        public Money getDiscountAmount() {
+            return Money.ofCents(slice.totalCents[row] - slice.netTotalCents[row]);
+        }
+
+        @Override
+        public Money getNetTotal() {
+            return Money.ofCents(slice.netTotalCents[row]);
+        }
+
+        @Override
+        public long getNetTotalCents() {
+            return slice.netTotalCents[row];
+        }
+
+        @Override
+        public String toString() {
+            return "Sale{" +
+                    "billId=" + getBillId() +
+                    ", date=" + getDate() +
+                    ", time=" + getTime() +
+                    ", total=" + Money.format(getTotalCents()) +
+                    ", discount=" + Money.format(getDiscountBasisPoints()) + "%" +
+                    ", netTotal=" + Money.format(getNetTotalCents()) +
+                    '}';
+        }
+    }
+}
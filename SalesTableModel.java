@@ -0,0 +1,70 @@
+package view;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.List;
+import model.Money;
+import model.SaleRecord;
+import util.TimestampCodec;
+
+/**
+ * Read-only table model backed directly by a list of sales.
+ * Cells are formatted only when the table asks for them, which is only for visible rows,
+ * and replacing the list fires a single change event.
+ */
+public class SalesTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] COLUMN_NAMES = {"Bill No.", "Date", "Time", "Total", "Discount", "Net Total"};
+
+    private List<SaleRecord> sales;
+
+    public SalesTableModel() {
+        this.sales = new ArrayList<>();
+    }
+
+    public void setSales(List<SaleRecord> sales) {
+        this.sales = sales;
+        fireTableDataChanged();
+    }
+
+    public SaleRecord getSaleAt(int row) {
+        return sales.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return sales.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        SaleRecord sale = sales.get(row);
+        switch (column) {
+            case 0:
+                return sale.getBillId() > 0 ? Long.toString(sale.getBillId()) : "";
+            case 1:
+                return TimestampCodec.format(sale.getDate());
+            case 2:
+                return sale.getTime().toString();
+            case 3:
+                return Money.format(sale.getTotalCents());
+            case 4:
+                return Money.format(sale.getDiscountBasisPoints());
+            case 5:
+                return Money.format(sale.getNetTotalCents());
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package util;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Parser and formatter for the fixed yyyy-MM-dd HH:mm:ss layout used in the sales files.
+ *
+ * Timestamps can be handled as local epoch seconds (seconds since 1970-01-01T00:00 with no
+ * time zone), which the parser produces and the formatter accepts without creating any
+ * objects. Dates are converted with the proleptic Gregorian calendar, as java.time does.
+ */
+public final class TimestampCodec {
+    /**
+     * Length of a timestamp in the yyyy-MM-dd HH:mm:ss layout
+     */
+    public static final int LENGTH = 19;
+    private static final long SECONDS_PER_DAY = 86400;
+
+    private TimestampCodec() {
+    }
+
+    /**
+     * Parses a yyyy-MM-dd HH:mm:ss timestamp into local epoch seconds
+     */
+    public static long parseEpochSecond(CharSequence text) {
+        if (text.length() != LENGTH
+                || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != ' '
+                || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            throw new DateTimeParseException("Text '" + text + "' could not be parsed", text, 0);
+        }
+        return toEpochSecond(
+                digits(text, 0, 4), digits(text, 5, 2), digits(text, 8, 2),
+                digits(text, 11, 2), digits(text, 14, 2), digits(text, 17, 2));
+    }
+
+    public static LocalDateTime parse(CharSequence text) {
+        return toLocalDateTime(parseEpochSecond(text));
+    }
+
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new DateTimeParseException("Text '" + text + "' could not be parsed", text, i);
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Converts date and time fields to local epoch seconds, checking that they form a real date and time
+     */
+    public static long toEpochSecond(int year, int month, int day, int hour, int minute, int second) {
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            throw new DateTimeException(String.format("Invalid date %04d-%02d-%02d", year, month, day));
+        }
+        if (hour > 23 || minute > 59 || second > 59) {
+            throw new DateTimeException(String.format("Invalid time %02d:%02d:%02d", hour, minute, second));
+        }
+        return epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600L + minute * 60L + second;
+    }
+
+    public static long toEpochSecond(LocalDateTime timestamp) {
+        return epochDay(timestamp.getYear(), timestamp.getMonthValue(), timestamp.getDayOfMonth()) * SECONDS_PER_DAY
+                + timestamp.getHour() * 3600L + timestamp.getMinute() * 60L + timestamp.getSecond();
+    }
+
+    public static LocalDateTime toLocalDateTime(long epochSecond) {
+        return LocalDateTime.of(toLocalDate(epochSecond), toLocalTime(epochSecond));
+    }
+
+    public static LocalDate toLocalDate(long epochSecond) {
+        return LocalDate.ofEpochDay(Math.floorDiv(epochSecond, SECONDS_PER_DAY));
+    }
+
+    public static LocalTime toLocalTime(long epochSecond) {
+        return LocalTime.ofSecondOfDay(Math.floorMod(epochSecond, SECONDS_PER_DAY));
+    }
+
+    /**
+     * Appends local epoch seconds in the yyyy-MM-dd HH:mm:ss layout
+     */
+    public static StringBuilder appendTo(StringBuilder out, long epochSecond) {
+        appendDate(out, epochSecond, '-').append(' ');
+        return appendTime(out, epochSecond, ':');
+    }
+
+    public static StringBuilder appendTo(StringBuilder out, LocalDateTime timestamp) {
+        return appendTo(out, toEpochSecond(timestamp));
+    }
+
+    /**
+     * Appends a timestamp in the yyyy-MM-dd_HH-mm-ss layout used in file names
+     */
+    public static StringBuilder appendFileStamp(StringBuilder out, LocalDateTime timestamp) {
+        long epochSecond = toEpochSecond(timestamp);
+        appendDate(out, epochSecond, '-').append('_');
+        return appendTime(out, epochSecond, '-');
+    }
+
+    /**
+     * Appends a date in the yyyy-MM-dd layout
+     */
+    public static StringBuilder appendTo(StringBuilder out, LocalDate date) {
+        appendDigits(out, date.getYear(), 4).append('-');
+        appendDigits(out, date.getMonthValue(), 2).append('-');
+        return appendDigits(out, date.getDayOfMonth(), 2);
+    }
+
+    /**
+     * Appends a time in the HH:mm:ss layout
+     */
+    public static StringBuilder appendTo(StringBuilder out, LocalTime time) {
+        appendDigits(out, time.getHour(), 2).append(':');
+        appendDigits(out, time.getMinute(), 2).append(':');
+        return appendDigits(out, time.getSecond(), 2);
+    }
+
+    public static String format(LocalDateTime timestamp) {
+        return appendTo(new StringBuilder(LENGTH), timestamp).toString();
+    }
+
+    public static String format(LocalDate date) {
+        return appendTo(new StringBuilder(10), date).toString();
+    }
+
+    private static StringBuilder appendDate(StringBuilder out, long epochSecond, char separator) {
+        // Civil date from a day count (H. Hinnant, "chrono-Compatible Low-Level Date Algorithms")
+        long z = Math.floorDiv(epochSecond, SECONDS_PER_DAY) + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        appendDigits(out, year, 4).append(separator);
+        appendDigits(out, month, 2).append(separator);
+        return appendDigits(out, day, 2);
+    }
+
+    private static StringBuilder appendTime(StringBuilder out, long epochSecond, char separator) {
+        int secondOfDay = (int) Math.floorMod(epochSecond, SECONDS_PER_DAY);
+        appendDigits(out, secondOfDay / 3600, 2).append(separator);
+        appendDigits(out, secondOfDay / 60 % 60, 2).append(separator);
+        return appendDigits(out, secondOfDay % 60, 2);
+    }
+
+    private static StringBuilder appendDigits(StringBuilder out, int value, int width) {
+        if (value < 0 || (width == 2 && value > 99) || value > 9999) {
+            // Outside the four-digit years this layout is meant for; let the caller see it
+            return out.append(value);
+        }
+        if (width == 4) {
+            out.append((char) ('0' + value / 1000)).append((char) ('0' + value / 100 % 10));
+        }
+        return out.append((char) ('0' + value / 10 % 10)).append((char) ('0' + value % 10));
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic Gregorian date
+     */
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+}